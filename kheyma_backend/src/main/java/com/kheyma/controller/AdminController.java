@@ -2,11 +2,21 @@ package com.kheyma.controller;
 
 import com.kheyma.dto.*;
 import com.kheyma.service.AdminService;
+import com.kheyma.model.Transaction;
+import com.kheyma.service.BookingStatsService;
+import com.kheyma.service.ExportService;
+import com.kheyma.service.RatingRepairService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.LocalDate;
 
 @RestController
 @RequestMapping("/admin")
@@ -16,6 +26,15 @@ public class AdminController {
     @Autowired
     private AdminService adminService;
     
+    @Autowired
+    private RatingRepairService ratingRepairService;
+    
+    @Autowired
+    private BookingStatsService bookingStatsService;
+    
+    @Autowired
+    private ExportService exportService;
+    
     @GetMapping("/users")
     public ResponseEntity<PageResponse<UserDto>> getAllUsers(
             @RequestParam(defaultValue = "0") int page,
@@ -55,11 +74,76 @@ public class AdminController {
         }
     }
     
+    /**
+     * Bookings and revenue across all locations, read from the daily rollups.
+     * Defaults to the last 30 days.
+     */
     @GetMapping("/stats")
-    public ResponseEntity<?> getStats() {
-        // Placeholder for stats endpoint
-        // You can implement this to return aggregated statistics
-        return ResponseEntity.ok(new StatsResponse("Stats endpoint - to be implemented"));
+    public ResponseEntity<?> getStats(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        LocalDate end = to != null ? to : LocalDate.now();
+        LocalDate start = from != null ? from : end.minusDays(29);
+        try {
+            return ResponseEntity.ok(bookingStatsService.getStats(null, start, end));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+    
+    /**
+     * Streams a whole collection ({@code transactions}, {@code users} or
+     * {@code reviews}) as CSV or NDJSON, optionally gzipped, straight from a
+     * database cursor.
+     */
+    @GetMapping("/exports/{dataset}")
+    public ResponseEntity<?> export(
+            @PathVariable String dataset,
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(defaultValue = "false") boolean gzip,
+            @RequestParam(defaultValue = "" + ExportService.DEFAULT_BATCH_SIZE) int batchSize,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) String locationId,
+            @RequestParam(required = false) Transaction.TransactionStatus status) {
+        ExportService.Dataset exportDataset;
+        ExportService.Format exportFormat;
+        try {
+            exportDataset = ExportService.Dataset.valueOf(dataset.toUpperCase());
+            exportFormat = ExportService.Format.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse("Unknown export dataset or format"));
+        }
+        if (batchSize < 1 || batchSize > ExportService.MAX_BATCH_SIZE) {
+            return ResponseEntity.badRequest()
+                    .body(new ErrorResponse("Batch size must be between 1 and " + ExportService.MAX_BATCH_SIZE));
+        }
+        
+        ExportService.ExportFilter filter = new ExportService.ExportFilter(from, to, locationId, status);
+        StreamingResponseBody body = out ->
+                exportService.export(exportDataset, exportFormat, filter, batchSize, gzip, out);
+        String filename = exportDataset.name().toLowerCase() + "." + exportFormat.getExtension() + (gzip ? ".gz" : "");
+        return ResponseEntity.ok()
+                .contentType(gzip ? MediaType.parseMediaType("application/gzip")
+                        : MediaType.parseMediaType(exportFormat.getContentType() + ";charset=UTF-8"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .body(body);
+    }
+    
+    @PostMapping("/maintenance/ratings/rebuild")
+    public ResponseEntity<?> rebuildRatings() {
+        int updated = ratingRepairService.repairRatings();
+        return ResponseEntity.ok(new MaintenanceResponse("Location ratings rebuilt", updated));
+    }
+    
+    @PostMapping("/maintenance/stats/rebuild")
+    public ResponseEntity<?> rebuildStats() {
+        long rollups = bookingStatsService.rebuild();
+        if (rollups < 0) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(new ErrorResponse("A stats rebuild is already running"));
+        }
+        return ResponseEntity.ok(new MaintenanceResponse("Booking stats rebuilt", (int) rollups));
     }
     
     private static class ErrorResponse {
@@ -86,16 +170,22 @@ public class AdminController {
         }
     }
     
-    private static class StatsResponse {
+    private static class MaintenanceResponse {
         private String message;
+        private int updated;
         
-        public StatsResponse(String message) {
+        public MaintenanceResponse(String message, int updated) {
             this.message = message;
+            this.updated = updated;
         }
         
         public String getMessage() {
             return message;
         }
+        
+        public int getUpdated() {
+            return updated;
+        }
     }
 }
 
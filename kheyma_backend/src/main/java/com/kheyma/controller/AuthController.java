@@ -4,6 +4,9 @@ import com.kheyma.aop.annotation.Loggable;
 import com.kheyma.aop.annotation.PerformanceMonitor;
 import com.kheyma.aop.annotation.SecurityAudit;
 import com.kheyma.dto.*;
+import com.kheyma.exception.ServiceBusyException;
+import com.kheyma.security.AuthenticatedUser;
+import com.kheyma.security.TokenRevocationService;
 import com.kheyma.service.AuthService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -21,12 +24,17 @@ public class AuthController {
     @Autowired
     private AuthService authService;
     
+    @Autowired
+    private TokenRevocationService tokenRevocationService;
+    
     @PostMapping("/register")
     @SecurityAudit(action = "USER_REGISTRATION", logParameters = false, sensitive = true)
     public ResponseEntity<?> register(@Valid @RequestBody RegisterRequest request) {
         try {
             AuthResponse response = authService.register(request);
             return ResponseEntity.status(HttpStatus.CREATED).body(response);
+        } catch (ServiceBusyException e) {
+            throw e;
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
         }
@@ -38,11 +46,28 @@ public class AuthController {
         try {
             AuthResponse response = authService.login(request);
             return ResponseEntity.ok(response);
+        } catch (ServiceBusyException e) {
+            throw e;
         } catch (RuntimeException e) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(new ErrorResponse(e.getMessage()));
         }
     }
     
+    /**
+     * Revokes the token the request was made with.
+     */
+    @PostMapping("/logout")
+    @SecurityAudit(action = "USER_LOGOUT")
+    public ResponseEntity<?> logout(Authentication authentication) {
+        if (!(authentication.getPrincipal() instanceof AuthenticatedUser)
+                || ((AuthenticatedUser) authentication.getPrincipal()).getTokenId() == null) {
+            return ResponseEntity.badRequest().body(new ErrorResponse("This token cannot be revoked"));
+        }
+        AuthenticatedUser principal = (AuthenticatedUser) authentication.getPrincipal();
+        tokenRevocationService.revoke(principal.getTokenId(), principal.getUserId(), principal.getTokenExpiresAt());
+        return ResponseEntity.noContent().build();
+    }
+    
     @PostMapping("/refresh")
     @SecurityAudit(action = "TOKEN_REFRESH")
     public ResponseEntity<?> refreshToken(Authentication authentication) {
@@ -4,15 +4,24 @@ import com.kheyma.aop.annotation.Loggable;
 import com.kheyma.aop.annotation.PerformanceMonitor;
 import com.kheyma.aop.annotation.SecurityAudit;
 import com.kheyma.dto.*;
+import com.kheyma.model.Location;
+import com.kheyma.repository.ContentVersion;
+import com.kheyma.service.AvailabilityService;
+import com.kheyma.service.BookingStatsService;
 import com.kheyma.service.LocationService;
+import com.kheyma.util.HttpCacheUtil;
 import com.kheyma.util.SecurityUtil;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @RestController
@@ -24,18 +33,43 @@ public class LocationController {
     @Autowired
     private LocationService locationService;
     
+    @Autowired
+    private AvailabilityService availabilityService;
+    
+    @Autowired
+    private BookingStatsService bookingStatsService;
+    
     @GetMapping("/public/all")
     public ResponseEntity<PageResponse<LocationDto>> getAllPublicLocations(
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "20") int size,
             @RequestParam(defaultValue = "createdAt") String sortBy,
-            @RequestParam(defaultValue = "desc") String sortDir) {
-        PageResponse<LocationDto> response = locationService.getAllPublicLocations(page, size, sortBy, sortDir);
+            @RequestParam(defaultValue = "desc") String sortDir,
+            @RequestParam(required = false) String after,
+            WebRequest webRequest) {
+        // Weak ETag over the newest update, the document count and the day (ticketAvailable
+        // is for today); validated by ETag only, since a deletion changes the count but not
+        // the newest updated_at. Reservations touch updated_at
+        ContentVersion version = locationService.getLocationsVersion();
+        String etag = HttpCacheUtil.weakETag(version.getLastModified(), version.getCount(), LocalDate.now(),
+                page, size, sortBy, sortDir, after);
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+        
+        PageResponse<LocationDto> response = locationService.getAllPublicLocations(page, size, sortBy, sortDir, after);
         return ResponseEntity.ok(response);
     }
     
     @GetMapping("/{id}")
-    public ResponseEntity<?> getLocationById(@PathVariable String id) {
+    public ResponseEntity<?> getLocationById(@PathVariable String id, WebRequest webRequest) {
+        // Validators come from updated_at alone, so a 304 never loads or serializes the location
+        LocalDateTime version = locationService.getLocationVersion(id);
+        if (version != null && webRequest.checkNotModified(
+                HttpCacheUtil.strongETag(id, version), HttpCacheUtil.toEpochMilli(version))) {
+            return null;
+        }
+        
         try {
             LocationDto location = locationService.getLocationById(id);
             return ResponseEntity.ok(location);
@@ -44,6 +78,14 @@ public class LocationController {
         }
     }
     
+    @GetMapping("/{id}/availability")
+    public ResponseEntity<AvailabilityDto> getAvailability(
+            @PathVariable String id,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return ResponseEntity.ok(availabilityService.getAvailability(id, from, to));
+    }
+    
     @GetMapping("/search")
     public ResponseEntity<PageResponse<LocationDto>> searchLocations(
             @RequestParam(required = false) String q,
@@ -54,10 +96,37 @@ public class LocationController {
             @RequestParam(required = false) Double minPrice,
             @RequestParam(required = false) Double maxPrice,
             @RequestParam(required = false) Integer rating,
+            @RequestParam(required = false) Location.LocationType locationType,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate checkIn,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate checkOut,
+            @RequestParam(required = false) String after,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "20") int size) {
         PageResponse<LocationDto> response = locationService.searchLocations(
-                q, lat, lng, radius, tags, minPrice, maxPrice, rating, page, size);
+                q, lat, lng, radius, tags, minPrice, maxPrice, rating, locationType, checkIn, checkOut,
+                after, page, size);
+        return ResponseEntity.ok(response);
+    }
+    
+    @GetMapping("/suggest")
+    public ResponseEntity<List<LocationSuggestionDto>> suggestLocations(
+            @RequestParam String prefix,
+            @RequestParam(defaultValue = "10") int limit) {
+        return ResponseEntity.ok(locationService.suggestLocations(prefix, limit));
+    }
+    
+    @GetMapping("/search/facets")
+    public ResponseEntity<FacetedSearchResponse> searchLocationsWithFacets(
+            @RequestParam(required = false) String q,
+            @RequestParam(required = false) List<String> tags,
+            @RequestParam(required = false) Double minPrice,
+            @RequestParam(required = false) Double maxPrice,
+            @RequestParam(required = false) Integer rating,
+            @RequestParam(required = false) Location.LocationType locationType,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        FacetedSearchResponse response = locationService.searchLocationsWithFacets(
+                q, tags, minPrice, maxPrice, rating, locationType, page, size);
         return ResponseEntity.ok(response);
     }
     
@@ -116,6 +185,27 @@ public class LocationController {
         }
     }
     
+    /**
+     * Bookings and revenue of a location, for its owner or an admin.
+     * Defaults to the last 30 days.
+     */
+    @GetMapping("/{id}/stats")
+    public ResponseEntity<?> getLocationStats(
+            @PathVariable String id,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            Authentication authentication) {
+        LocalDate end = to != null ? to : LocalDate.now();
+        LocalDate start = from != null ? from : end.minusDays(29);
+        try {
+            String userId = SecurityUtil.getUserIdFromAuthentication(authentication);
+            boolean isAdmin = SecurityUtil.isAdmin(authentication);
+            return ResponseEntity.ok(bookingStatsService.getLocationStats(id, start, end, userId, isAdmin));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+    
     
     private static class ErrorResponse {
         private String message;
@@ -1,7 +1,9 @@
 package com.kheyma.controller;
 
 import com.kheyma.dto.*;
+import com.kheyma.repository.ContentVersion;
 import com.kheyma.service.ReviewService;
+import com.kheyma.util.HttpCacheUtil;
 import com.kheyma.util.SecurityUtil;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -9,6 +11,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 @RestController
 @RequestMapping("/reviews")
@@ -33,7 +36,15 @@ public class ReviewController {
     public ResponseEntity<PageResponse<ReviewDto>> getReviewsByLocation(
             @PathVariable String locationId,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "20") int size) {
+            @RequestParam(defaultValue = "20") int size,
+            WebRequest webRequest) {
+        // Validated by ETag only: deleting a review lowers the count without a newer updated_at
+        ContentVersion version = reviewService.getLocationReviewsVersion(locationId);
+        String etag = HttpCacheUtil.weakETag(locationId, version.getLastModified(), version.getCount(), page, size);
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+        
         PageResponse<ReviewDto> response = reviewService.getReviewsByLocation(locationId, page, size);
         return ResponseEntity.ok(response);
     }
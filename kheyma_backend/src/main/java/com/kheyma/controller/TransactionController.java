@@ -1,14 +1,21 @@
 package com.kheyma.controller;
 
 import com.kheyma.dto.*;
+import com.kheyma.exception.ConflictException;
+import com.kheyma.service.IdempotencyService;
 import com.kheyma.service.TransactionService;
 import com.kheyma.util.SecurityUtil;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/transactions")
@@ -17,13 +24,53 @@ public class TransactionController {
     @Autowired
     private TransactionService transactionService;
     
+    @Autowired
+    private IdempotencyService idempotencyService;
+    
+    /**
+     * With an {@code Idempotency-Key} header, retries of the same booking get
+     * the first response back instead of creating another transaction.
+     */
     @PostMapping
     public ResponseEntity<?> createTransaction(@Valid @RequestBody CreateTransactionRequest request,
+                                               @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
                                                Authentication authentication) {
-        try {
-            String userId = SecurityUtil.getUserIdFromAuthentication(authentication);
+        String userId = SecurityUtil.getUserIdFromAuthentication(authentication);
+        return book(userId, idempotencyKey, request, () -> {
             TransactionDto transaction = transactionService.createTransaction(request, userId);
             return ResponseEntity.status(HttpStatus.CREATED).body(transaction);
+        });
+    }
+    
+    /**
+     * Books several stays in one request; either all are created or none.
+     * Supports {@code Idempotency-Key} like the single booking endpoint.
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<?> createTransactions(@Valid @RequestBody CreateBatchTransactionRequest request,
+                                                @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+                                                Authentication authentication) {
+        String userId = SecurityUtil.getUserIdFromAuthentication(authentication);
+        return book(userId, idempotencyKey, request, () -> {
+            List<TransactionDto> transactions = transactionService.createTransactions(request, userId);
+            return ResponseEntity.status(HttpStatus.CREATED).body(transactions);
+        });
+    }
+    
+    /**
+     * Runs a booking, through the idempotency store when a key is given.
+     * Failures become a 400 only here, outside the store, so they are never
+     * recorded as the key's response and a retry runs the booking again.
+     */
+    private ResponseEntity<?> book(String userId, String idempotencyKey, Object request,
+                                   Supplier<ResponseEntity<?>> action) {
+        try {
+            if (idempotencyKey == null) {
+                return action.get();
+            }
+            return idempotencyService.execute(userId, idempotencyKey, request, action);
+        } catch (ConflictException e) {
+            throw e;
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
         }
@@ -51,6 +98,16 @@ public class TransactionController {
         }
     }
     
+    /**
+     * Server-sent events with the booking's status until payment settles it.
+     */
+    @GetMapping(value = "/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamTransactionStatus(@PathVariable String id, Authentication authentication) {
+        String userId = SecurityUtil.getUserIdFromAuthentication(authentication);
+        boolean isAdmin = SecurityUtil.isAdmin(authentication);
+        return transactionService.subscribeToStatus(id, userId, isAdmin);
+    }
+    
     @PutMapping("/{id}/cancel")
     public ResponseEntity<?> cancelTransaction(@PathVariable String id, Authentication authentication) {
         try {
@@ -0,0 +1,59 @@
+package com.kheyma.database;
+
+import com.kheyma.model.Location;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Brings documents written by older versions to the current schema at
+ * startup. Every step only matches documents still in the old shape, so
+ * running it again is a no-op.
+ */
+@Component
+@Order(0)
+public class DataMigrations implements CommandLineRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(DataMigrations.class);
+
+    private final MongoTemplate mongoTemplate;
+
+    public DataMigrations(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public void run(String... args) {
+        convertPricesToDecimal();
+    }
+
+    /**
+     * {@code price_per_night} used to be stored as a string (the default
+     * mapping of BigDecimal). Range filters, sorts, keyset cursors and price
+     * facets compare it as DECIMAL128 and would skip or misorder such
+     * locations. Values that are not numbers are left as they are.
+     */
+    private void convertPricesToDecimal() {
+        MongoCollection<Document> locations = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Location.class));
+        Document legacy = new Document("price_per_night", new Document("$type", "string"));
+        UpdateResult result = locations.updateMany(legacy, List.of(new Document("$set",
+                new Document("price_per_night", new Document("$convert", new Document("input", "$price_per_night")
+                        .append("to", "decimal")
+                        .append("onError", "$price_per_night"))))));
+        if (result.getModifiedCount() > 0) {
+            logger.info("Converted price_per_night of {} locations to decimal", result.getModifiedCount());
+        }
+        long unconverted = locations.countDocuments(legacy);
+        if (unconverted > 0) {
+            logger.warn("{} locations have a price_per_night that is not a number", unconverted);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.kheyma.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * Availability calendar of one location between {@code from} and {@code to} (inclusive).
+ * {@code bitmap} is Base64 of a little-endian bit set: bit {@code i} is set when
+ * day {@code from + i} is fully booked.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AvailabilityDto {
+    private String locationId;
+    private LocalDate from;
+    private LocalDate to;
+    private int days;
+    private boolean available;
+    private String bitmap;
+}
@@ -0,0 +1,15 @@
+package com.kheyma.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class CreateBatchTransactionRequest {
+    @NotEmpty(message = "At least one booking is required")
+    @Size(max = 50, message = "A batch can contain at most 50 bookings")
+    private List<@Valid CreateTransactionRequest> items;
+}
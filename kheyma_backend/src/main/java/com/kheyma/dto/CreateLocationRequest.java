@@ -1,6 +1,7 @@
 package com.kheyma.dto;
 
 import com.kheyma.model.Location;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import lombok.Data;
@@ -27,6 +28,9 @@ public class CreateLocationRequest {
     
     private boolean ticketRequired = true;
     
+    @Min(value = 0, message = "Ticket capacity cannot be negative")
+    private Integer ticketCapacity = 1;
+    
     private Location.LocationType locationType;
 }
 
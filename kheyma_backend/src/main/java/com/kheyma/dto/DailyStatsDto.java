@@ -0,0 +1,18 @@
+package com.kheyma.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DailyStatsDto {
+    private LocalDate date;
+    private long bookings;
+    private long nights;
+    private BigDecimal revenue;
+}
@@ -0,0 +1,13 @@
+package com.kheyma.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FacetedSearchResponse {
+    private PageResponse<LocationDto> results;
+    private LocationFacets facets;
+}
@@ -1,5 +1,6 @@
 package com.kheyma.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.kheyma.model.Location;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -23,11 +24,16 @@ public class LocationDto {
     private List<String> imageUrls;
     private boolean ticketRequired;
     private boolean ticketAvailable;
+    private Integer ticketCapacity;
     private Location.LocationType locationType;
     private String ownerId;
     private Double averageRating;
     private Integer reviewCount;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
+    
+    // Only present on "near me" search results
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Double distanceKm;
 }
 
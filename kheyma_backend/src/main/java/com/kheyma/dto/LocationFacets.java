@@ -0,0 +1,22 @@
+package com.kheyma.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Facet counts computed over the full filtered result set.
+ * Price and rating buckets are labelled by their lower bound.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LocationFacets {
+    private long total;
+    private List<FacetCount> locationTypes;
+    private List<FacetCount> tags;
+    private List<FacetCount> priceRanges;
+    private List<FacetCount> ratingRanges;
+}
@@ -0,0 +1,15 @@
+package com.kheyma.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LocationSuggestionDto {
+    private String id;
+    private String title;
+    private Double averageRating;
+    private Integer reviewCount;
+}
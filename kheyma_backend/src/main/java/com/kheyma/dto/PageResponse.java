@@ -1,5 +1,6 @@
 package com.kheyma.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -17,5 +18,21 @@ public class PageResponse<T> {
     private int totalPages;
     private boolean first;
     private boolean last;
+    
+    // Opaque keyset position of the next page; only set by cursor-paginated endpoints
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String nextCursor;
+    
+    public PageResponse(List<T> content, int page, int size, long totalElements, int totalPages,
+                        boolean first, boolean last) {
+        this(content, page, size, totalElements, totalPages, first, last, null);
+    }
+    
+    /**
+     * Builds a page for cursor-paginated reads, where no total count is computed.
+     * Totals are reported as -1 (unknown).
+     */
+    public static <T> PageResponse<T> ofCursor(List<T> content, int size, boolean first, String nextCursor) {
+        return new PageResponse<>(content, 0, size, -1, -1, first, nextCursor == null, nextCursor);
+    }
 }
-
@@ -0,0 +1,29 @@
+package com.kheyma.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RevenueStatsDto {
+    // Null for statistics across all locations
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String locationId;
+    private LocalDate from;
+    private LocalDate to;
+    private long bookings;
+    private long nights;
+    private BigDecimal revenue;
+    private Map<String, BigDecimal> revenueByPackage;
+    private Map<String, BigDecimal> revenueByPaymentMethod;
+    // Days with at least one booking, in date order
+    private List<DailyStatsDto> days;
+}
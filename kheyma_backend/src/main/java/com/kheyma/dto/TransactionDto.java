@@ -23,6 +23,7 @@ public class TransactionDto {
     private Transaction.PaymentMethod paymentMethod;
     private Transaction.TransactionStatus status;
     private String paymentId;
+    private LocalDateTime expiresAt;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 }
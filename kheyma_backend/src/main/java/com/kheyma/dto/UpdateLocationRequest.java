@@ -1,6 +1,7 @@
 package com.kheyma.dto;
 
 import com.kheyma.model.Location;
+import jakarta.validation.constraints.Min;
 import lombok.Data;
 
 import java.math.BigDecimal;
@@ -15,7 +16,10 @@ public class UpdateLocationRequest {
     private BigDecimal pricePerNight;
     private List<String> tags;
     private boolean ticketRequired;
-    private boolean ticketAvailable;
+    
+    @Min(value = 0, message = "Ticket capacity cannot be negative")
+    private Integer ticketCapacity;
+    
     private Location.LocationType locationType;
 }
 
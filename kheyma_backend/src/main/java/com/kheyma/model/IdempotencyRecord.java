@@ -0,0 +1,47 @@
+package com.kheyma.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.time.LocalDateTime;
+
+/**
+ * Outcome of a request sent with an {@code Idempotency-Key} header.
+ * 
+ * The id is {@code userId:key}, so the first request inserts the record
+ * while it runs and retries find it instead of running again. Records are
+ * removed by a TTL index once retries can no longer be expected.
+ */
+@Document(collection = "idempotency_keys")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IdempotencyRecord {
+    @Id
+    private String id;
+    
+    // Hash of the request body, to reject a key reused for a different request
+    @Field("request_hash")
+    private String requestHash;
+    
+    private boolean completed;
+    
+    @Field("status_code")
+    private int statusCode;
+    
+    // Response body as JSON
+    private String body;
+    
+    @Indexed(name = "created_at_ttl_idx", expireAfter = "24h")
+    @Field("created_at")
+    private LocalDateTime createdAt;
+    
+    public static String idOf(String userId, String key) {
+        return userId + ":" + key;
+    }
+}
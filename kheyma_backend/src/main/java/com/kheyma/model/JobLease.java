@@ -0,0 +1,36 @@
+package com.kheyma.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.time.LocalDateTime;
+
+/**
+ * Lease on a background job, one document per job name.
+ * 
+ * The node whose lease has not expired is the only one running the job;
+ * the job's progress is kept alongside so another node can resume it.
+ */
+@Document(collection = "job_leases")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class JobLease {
+    @Id
+    private String id;
+    
+    private String owner;
+    
+    @Field("lease_until")
+    private LocalDateTime leaseUntil;
+    
+    // Job-specific resume position, or null when the last run finished
+    private String checkpoint;
+    
+    @Field("updated_at")
+    private LocalDateTime updatedAt;
+}
@@ -4,10 +4,14 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.index.GeoSpatialIndexType;
 import org.springframework.data.mongodb.core.index.GeoSpatialIndexed;
+import org.springframework.data.mongodb.core.index.TextIndexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.mapping.FieldType;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -15,6 +19,20 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Document(collection = "locations")
+@CompoundIndexes({
+    // Search filters: equality/multikey prefix first, range or sort key last
+    @CompoundIndex(name = "type_price_idx", def = "{ 'location_type': 1, 'price_per_night': 1 }"),
+    @CompoundIndex(name = "tags_rating_idx", def = "{ 'tags': 1, 'average_rating': -1 }"),
+    @CompoundIndex(name = "rating_price_idx", def = "{ 'average_rating': -1, 'price_per_night': 1 }"),
+    // Cursor pagination seeks on (sort key, _id); one index per supported sort key
+    @CompoundIndex(name = "created_at_idx", def = "{ 'created_at': -1, '_id': -1 }"),
+    // Also serves the latest modification lookup for conditional GETs on listings
+    @CompoundIndex(name = "updated_at_id_idx", def = "{ 'updated_at': -1, '_id': -1 }"),
+    @CompoundIndex(name = "price_id_idx", def = "{ 'price_per_night': 1, '_id': 1 }"),
+    @CompoundIndex(name = "rating_id_idx", def = "{ 'average_rating': -1, '_id': -1 }"),
+    @CompoundIndex(name = "review_count_id_idx", def = "{ 'review_count': -1, '_id': -1 }"),
+    @CompoundIndex(name = "title_id_idx", def = "{ 'title': 1, '_id': 1 }")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -22,16 +40,20 @@ public class Location {
     @Id
     private String id;
     
+    // Weighted text index: title > tags > description
+    @TextIndexed(weight = 10)
     private String title;
     
+    @TextIndexed
     private String description;
     
     @GeoSpatialIndexed(type = GeoSpatialIndexType.GEO_2DSPHERE)
     private GeoLocation geoLocation;
     
-    @Field("price_per_night")
+    @Field(value = "price_per_night", targetType = FieldType.DECIMAL128)
     private BigDecimal pricePerNight;
     
+    @TextIndexed(weight = 5)
     private List<String> tags = new ArrayList<>();
     
     @Field("image_urls")
@@ -40,8 +62,9 @@ public class Location {
     @Field("ticket_required")
     private boolean ticketRequired = true;
     
-    @Field("ticket_available")
-    private boolean ticketAvailable = true;
+    // Bookings accepted per day; tickets left on a day are derived from active reservations
+    @Field("ticket_capacity")
+    private Integer ticketCapacity = 1;
     
     @Field("location_type")
     private LocationType locationType;
@@ -55,6 +78,10 @@ public class Location {
     @Field("review_count")
     private Integer reviewCount = 0;
     
+    // Running sum of review ratings; averageRating = ratingSum / reviewCount
+    @Field("rating_sum")
+    private Long ratingSum = 0L;
+    
     @Field("created_at")
     private LocalDateTime createdAt = LocalDateTime.now();
     
@@ -0,0 +1,60 @@
+package com.kheyma.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.mapping.FieldType;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Bookings of one location made on one day, pre-aggregated for dashboards.
+ * 
+ * The id is {@code locationId:yyyy-MM-dd} (the day the booking was created).
+ * Counts cover bookings that are not cancelled or refunded; they are
+ * incremented when a booking is created and decremented when it is
+ * cancelled. Amounts are DECIMAL128 so {@code $inc} stays exact.
+ */
+@Document(collection = "location_daily_stats")
+@CompoundIndex(name = "location_date_idx", def = "{ 'location_id': 1, 'date': 1 }")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LocationDailyStats {
+    @Id
+    private String id;
+    
+    @Field("location_id")
+    private String locationId;
+    
+    // Serves the all-locations range read, which has no location to lead with
+    @Indexed(name = "date_idx")
+    private LocalDate date;
+    
+    private long bookings;
+    
+    private long nights;
+    
+    @Field(targetType = FieldType.DECIMAL128)
+    private BigDecimal revenue = BigDecimal.ZERO;
+    
+    // Keyed by Transaction.PackageType name
+    @Field("revenue_by_package")
+    private Map<String, BigDecimal> revenueByPackage = new HashMap<>();
+    
+    // Keyed by Transaction.PaymentMethod name
+    @Field("revenue_by_payment_method")
+    private Map<String, BigDecimal> revenueByPaymentMethod = new HashMap<>();
+    
+    public static String idOf(String locationId, LocalDate date) {
+        return locationId + ":" + date;
+    }
+}
@@ -0,0 +1,39 @@
+package com.kheyma.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.time.LocalDate;
+
+/**
+ * Reservation inventory of one location for one night.
+ * 
+ * The id is {@code locationId:yyyy-MM-dd}, so claiming a night is a single
+ * conditional upsert on a unique key and concurrent bookings of the same
+ * night are serialized by MongoDB itself.
+ */
+@Document(collection = "location_nights")
+@CompoundIndex(name = "location_date_idx", def = "{ 'location_id': 1, 'date': 1 }")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LocationNight {
+    @Id
+    private String id;
+    
+    @Field("location_id")
+    private String locationId;
+    
+    private LocalDate date;
+    
+    private int reserved;
+    
+    public static String idOf(String locationId, LocalDate date) {
+        return locationId + ":" + date;
+    }
+}
@@ -0,0 +1,46 @@
+package com.kheyma.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.time.LocalDateTime;
+
+/**
+ * Work item that must run after a write, kept in Mongo so it survives restarts.
+ * 
+ * An event is due once {@code next_attempt_at} has passed. Claiming it moves
+ * {@code next_attempt_at} forward by a lease, so a worker that dies mid-way
+ * simply lets the event become due again; finished events are deleted.
+ */
+@Document(collection = "outbox")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxEvent {
+    @Id
+    private String id;
+    
+    private Type type;
+    
+    // Id of the document the event is about, e.g. the transaction to charge
+    @Field("aggregate_id")
+    private String aggregateId;
+    
+    private int attempts;
+    
+    @Indexed(name = "next_attempt_at_idx")
+    @Field("next_attempt_at")
+    private LocalDateTime nextAttemptAt;
+    
+    @Field("created_at")
+    private LocalDateTime createdAt;
+    
+    public enum Type {
+        PAYMENT_REQUESTED
+    }
+}
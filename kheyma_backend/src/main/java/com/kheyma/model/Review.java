@@ -4,12 +4,14 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 
 import java.time.LocalDateTime;
 
 @Document(collection = "reviews")
+@CompoundIndex(name = "location_updated_idx", def = "{ 'location_id': 1, 'updated_at': -1 }")
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -0,0 +1,38 @@
+package com.kheyma.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.time.LocalDateTime;
+
+/**
+ * A JWT that must no longer be accepted, by its {@code jti} claim.
+ * 
+ * Kept until the token would have expired anyway; the TTL index then
+ * removes it.
+ */
+@Document(collection = "revoked_tokens")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RevokedToken {
+    @Id
+    private String id;
+    
+    @Field("user_id")
+    private String userId;
+    
+    // Read by every node to pick up revocations made elsewhere
+    @Indexed(name = "revoked_at_idx")
+    @Field("revoked_at")
+    private LocalDateTime revokedAt;
+    
+    @Indexed(name = "expires_at_ttl_idx", expireAfter = "0s")
+    @Field("expires_at")
+    private LocalDateTime expiresAt;
+}
@@ -4,6 +4,9 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 
@@ -12,6 +15,11 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 @Document(collection = "transactions")
+@CompoundIndexes({
+    @CompoundIndex(name = "location_dates_idx", def = "{ 'location_id': 1, 'start_date': 1, 'end_date': 1 }"),
+    // Drives the batches of the job that completes past bookings
+    @CompoundIndex(name = "status_end_date_idx", def = "{ 'status': 1, 'end_date': 1, '_id': 1 }")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -44,6 +52,12 @@ public class Transaction {
     @Field("payment_id")
     private String paymentId; // External payment gateway transaction ID
     
+    // End of a PENDING hold; the booking is cancelled if payment has not settled by then.
+    // Removed once the transaction leaves PENDING, so the index only holds open holds
+    @Indexed(name = "expires_at_idx", sparse = true)
+    @Field("expires_at")
+    private LocalDateTime expiresAt;
+    
     @Field("created_at")
     private LocalDateTime createdAt = LocalDateTime.now();
     
@@ -36,6 +36,10 @@ public class User {
     
     private boolean active = true;
     
+    // Part of every issued JWT; incremented to revoke the user's tokens
+    @Field("token_version")
+    private long tokenVersion;
+    
     @Field("created_at")
     private LocalDateTime createdAt = LocalDateTime.now();
     
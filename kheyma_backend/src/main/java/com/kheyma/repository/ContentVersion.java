@@ -0,0 +1,19 @@
+package com.kheyma.repository;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Cheap fingerprint of a collection of documents, used to validate
+ * conditional GETs without loading the documents themselves.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ContentVersion {
+    private LocalDateTime lastModified;
+    private long count;
+}
@@ -0,0 +1,21 @@
+package com.kheyma.repository;
+
+import com.kheyma.dto.LocationFacets;
+import com.kheyma.model.Location;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Output of {@link LocationRepositoryCustom#searchWithFacets}.
+ * {@code facets} is null when the caller did not ask for them.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LocationFacetResult {
+    private List<Location> hits;
+    private LocationFacets facets;
+}
@@ -10,7 +10,7 @@ import org.springframework.stereotype.Repository;
 import java.util.List;
 
 @Repository
-public interface LocationRepository extends MongoRepository<Location, String> {
+public interface LocationRepository extends MongoRepository<Location, String>, LocationRepositoryCustom {
     Page<Location> findByTicketRequired(boolean ticketRequired, Pageable pageable);
     
     @Query("{ 'title': { $regex: ?0, $options: 'i' } }")
@@ -27,7 +27,7 @@ public interface LocationRepository extends MongoRepository<Location, String> {
     
     Page<Location> findByOwnerId(String ownerId, Pageable pageable);
     
-    @Query("{ $or: [ { 'title': { $regex: ?0, $options: 'i' } }, { 'description': { $regex: ?0, $options: 'i' } }, { 'tags': { $in: [?0] } } ] }")
+    @Query("{ $text: { $search: ?0 } }")
     Page<Location> search(String query, Pageable pageable);
 }
 
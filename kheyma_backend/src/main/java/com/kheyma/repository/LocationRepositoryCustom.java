@@ -0,0 +1,84 @@
+package com.kheyma.repository;
+
+import com.kheyma.model.Location;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.geo.GeoResult;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Custom query fragment for {@link LocationRepository}.
+ * Builds a single Mongo query out of every search filter so that paging
+ * and counts are computed by the database instead of in memory.
+ */
+public interface LocationRepositoryCustom {
+    
+    Page<Location> searchByCriteria(LocationSearchCriteria criteria, Pageable pageable);
+    
+    /**
+     * Runs a {@code $geoNear} search around the criteria's coordinates.
+     * Results are ordered by distance and their distance is reported in meters.
+     *
+     * @param minDistanceMeters distance of the last result already returned, or null for the first page
+     * @param excludeIds ids already returned at exactly {@code minDistanceMeters}
+     * @param limit maximum number of results
+     */
+    List<GeoResult<Location>> searchNear(LocationSearchCriteria criteria, Double minDistanceMeters,
+                                         Collection<String> excludeIds, int limit);
+    
+    /**
+     * Runs the search as one {@code $match} + {@code $facet} pipeline that returns
+     * the requested page together with facet counts over the whole match.
+     *
+     * @param includeFacets false to compute only the page of hits (facets already known)
+     */
+    LocationFacetResult searchWithFacets(LocationSearchCriteria criteria, Pageable pageable, boolean includeFacets);
+    
+    /**
+     * Reads only {@code updated_at} of one location, for conditional GETs.
+     */
+    Optional<LocalDateTime> findUpdatedAtById(String id);
+    
+    /**
+     * Sets {@code updated_at} to now without changing anything else, for
+     * changes to derived fields (availability) that must invalidate validators.
+     */
+    void touch(String id);
+    
+    /**
+     * Latest {@code updated_at} across all locations (index-backed) plus the
+     * estimated document count, for conditional GETs on listings.
+     */
+    ContentVersion findVersion();
+    
+    /**
+     * Atomically shifts {@code rating_sum} and {@code review_count} by the given
+     * deltas and recomputes {@code average_rating} in the same update.
+     *
+     * @return the updated location, or null if it does not exist
+     */
+    Location incrementRating(String id, int ratingDelta, int countDelta);
+    
+    /**
+     * Recomputes rating totals of every location from the reviews collection
+     * with one {@code $group} aggregation and unordered bulk writes.
+     *
+     * @return number of locations written
+     */
+    int rebuildRatings();
+    
+    /**
+     * Keyset read ordered by {@code (sortField, _id)}. Seeks past the given
+     * position instead of skipping, and never counts the collection.
+     *
+     * @param lastValue sort value of the last row already returned, or null for the first page
+     * @param lastId id of the last row already returned, or null for the first page
+     */
+    List<Location> findPageAfter(String sortField, Sort.Direction direction, Object lastValue, String lastId,
+                                 int limit);
+}
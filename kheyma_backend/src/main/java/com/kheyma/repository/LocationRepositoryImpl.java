@@ -0,0 +1,478 @@
+package com.kheyma.repository;
+
+import com.kheyma.dto.FacetCount;
+import com.kheyma.dto.LocationFacets;
+import com.kheyma.model.Location;
+import com.kheyma.model.LocationNight;
+import com.kheyma.model.Review;
+import com.kheyma.model.Transaction;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.GeoResult;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.TextCriteria;
+import org.springframework.data.mongodb.core.query.TextQuery;
+import org.springframework.data.support.PageableExecutionUtils;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * MongoTemplate-backed implementation of {@link LocationRepositoryCustom}.
+ * Picked up by Spring Data through the {@code Impl} naming convention.
+ */
+public class LocationRepositoryImpl implements LocationRepositoryCustom {
+    
+    private static final String DISTANCE_FIELD = "distance";
+    private static final String FULL_NIGHTS_FIELD = "full_nights";
+    private static final int FACET_TOP_TAGS = 10;
+    private static final int REPAIR_BATCH_SIZE = 1_000;
+    // Bucket lower bounds; values outside the last bound (or missing) fall into "other"
+    private static final List<Integer> PRICE_BOUNDARIES = List.of(0, 250, 500, 1000, 2000, 5000);
+    private static final List<Double> RATING_BOUNDARIES = List.of(0.0, 1.0, 2.0, 3.0, 4.0, 5.01);
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    @Override
+    public Page<Location> searchByCriteria(LocationSearchCriteria criteria, Pageable pageable) {
+        if (criteria.hasStay()) {
+            return searchAvailable(criteria, pageable);
+        }
+        Query query = buildQuery(criteria, true).with(pageable);
+        List<Location> content = mongoTemplate.find(query, Location.class);
+        
+        // Count is only issued when the page alone cannot tell the total
+        return PageableExecutionUtils.getPage(content, pageable,
+                () -> mongoTemplate.count(Query.of(query).limit(-1).skip(-1), Location.class));
+    }
+    
+    /**
+     * Same search as {@link #searchByCriteria} but as an aggregation, so the
+     * availability stages can drop fully booked locations while Mongo pages
+     * and counts the rest.
+     */
+    private Page<Location> searchAvailable(LocationSearchCriteria criteria, Pageable pageable) {
+        Document match = buildQuery(criteria, true).getQueryObject();
+        Document order = orderOf(match);
+        
+        List<AggregationOperation> hits = new ArrayList<>();
+        hits.add(context -> new Document("$match", context.getMappedObject(match, Location.class)));
+        hits.add(context -> new Document("$sort", order));
+        hits.addAll(availabilityStages(criteria));
+        hits.add(Aggregation.skip(pageable.getOffset()));
+        hits.add(Aggregation.limit(pageable.getPageSize()));
+        List<Location> content = mongoTemplate.aggregate(
+                Aggregation.newAggregation(Location.class, hits), Location.class, Location.class).getMappedResults();
+        
+        return PageableExecutionUtils.getPage(content, pageable, () -> {
+            List<AggregationOperation> count = new ArrayList<>();
+            count.add(context -> new Document("$match", context.getMappedObject(match, Location.class)));
+            count.addAll(availabilityStages(criteria));
+            count.add(context -> new Document("$count", "count"));
+            Document total = mongoTemplate.aggregate(
+                    Aggregation.newAggregation(Location.class, count), Location.class, Document.class)
+                    .getUniqueMappedResult();
+            return total != null ? total.get("count", Number.class).longValue() : 0;
+        });
+    }
+    
+    /**
+     * Stages dropping the locations that have no ticket left on some night of
+     * the criteria's stay. Each location reaching them probes its own nights
+     * through {@code location_date_idx} and stops at the first full one, so
+     * the cost follows the documents the page reads, not every match.
+     * 
+     * Night counts still include PENDING holds that expired but were not yet
+     * swept. As in the availability timelines, those holds do not count: a
+     * night at capacity is only full once its expired holds are subtracted.
+     */
+    private List<AggregationOperation> availabilityStages(LocationSearchCriteria criteria) {
+        Object from = mongoTemplate.getConverter().convertToMongoType(criteria.getAvailableFrom());
+        Object until = mongoTemplate.getConverter().convertToMongoType(criteria.getAvailableUntil());
+        Object now = mongoTemplate.getConverter().convertToMongoType(LocalDateTime.now());
+        
+        // Expired holds occupying the night: start_date <= night < checkout, where a
+        // same-day stay checks out the day after (AvailabilityService.checkoutOf)
+        Document expiredHolds = new Document("from", mongoTemplate.getCollectionName(Transaction.class))
+                .append("let", new Document("locationId", "$$locationId").append("night", "$date"))
+                .append("pipeline", List.of(
+                        new Document("$match", new Document("status", Transaction.TransactionStatus.PENDING.name())
+                                .append("expires_at", new Document("$lte", now))
+                                .append("$expr", new Document("$and", List.of(
+                                        new Document("$eq", List.of("$location_id", "$$locationId")),
+                                        new Document("$lte", List.of("$start_date", "$$night")),
+                                        new Document("$or", List.of(
+                                                new Document("$gt", List.of("$end_date", "$$night")),
+                                                new Document("$eq", List.of("$start_date", "$$night")))))))),
+                        new Document("$project", new Document("_id", 1))))
+                .append("as", "expired_holds");
+        
+        // Capacity defaults to one ticket, as in InventoryService.capacityOf
+        Document lookup = new Document("from", mongoTemplate.getCollectionName(LocationNight.class))
+                .append("let", new Document("locationId", new Document("$toString", "$_id"))
+                        .append("capacity", new Document("$ifNull", List.of("$ticket_capacity", 1))))
+                .append("pipeline", List.of(
+                        new Document("$match", new Document("date", new Document("$gte", from).append("$lt", until))
+                                .append("$expr", new Document("$and", List.of(
+                                        new Document("$eq", List.of("$location_id", "$$locationId")),
+                                        new Document("$gte", List.of("$reserved", "$$capacity")))))),
+                        new Document("$lookup", expiredHolds),
+                        new Document("$match", new Document("$expr", new Document("$gte", List.of(
+                                new Document("$subtract", List.of("$reserved", new Document("$size", "$expired_holds"))),
+                                "$$capacity")))),
+                        new Document("$limit", 1),
+                        new Document("$project", new Document("_id", 1))))
+                .append("as", FULL_NIGHTS_FIELD);
+        // A location without capacity never has a night document but is never free either
+        Document available = new Document(FULL_NIGHTS_FIELD, new Document("$size", 0))
+                .append("ticket_capacity", new Document("$not", new Document("$lte", 0)));
+        
+        return List.of(
+                context -> new Document("$lookup", lookup),
+                context -> new Document("$match", available),
+                context -> new Document("$unset", FULL_NIGHTS_FIELD));
+    }
+    
+    @Override
+    public List<GeoResult<Location>> searchNear(LocationSearchCriteria criteria, Double minDistanceMeters,
+                                                Collection<String> excludeIds, int limit) {
+        // $text is not allowed inside $geoNear, so the keyword filter falls back to a
+        // regex that only runs over documents the geo index walk already selected
+        Query filter = buildQuery(criteria, false, excludeIds);
+        Document query = filter.getQueryObject();
+        
+        // $geoNear must be the first stage; it walks the 2dsphere index outwards, so
+        // starting at the cursor's distance keeps deep pages as cheap as the first one
+        AggregationOperation geoNear = context -> {
+            Document stage = new Document("near", new Document("type", "Point")
+                    .append("coordinates", List.of(criteria.getLongitude(), criteria.getLatitude())))
+                    .append("key", "geoLocation")
+                    .append("distanceField", DISTANCE_FIELD)
+                    .append("spherical", true)
+                    .append("query", context.getMappedObject(query, Location.class));
+            if (criteria.getRadiusKm() != null) {
+                stage.append("maxDistance", criteria.getRadiusKm() * 1000);
+            }
+            if (minDistanceMeters != null) {
+                stage.append("minDistance", minDistanceMeters);
+            }
+            return new Document("$geoNear", stage);
+        };
+        
+        List<AggregationOperation> stages = new ArrayList<>();
+        stages.add(geoNear);
+        if (criteria.hasStay()) {
+            stages.addAll(availabilityStages(criteria));
+        }
+        stages.add(Aggregation.limit(limit));
+        Aggregation aggregation = Aggregation.newAggregation(Location.class, stages);
+        List<Document> documents = mongoTemplate.aggregate(aggregation, Location.class, Document.class)
+                .getMappedResults();
+        
+        List<GeoResult<Location>> results = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            double distance = document.get(DISTANCE_FIELD, Number.class).doubleValue();
+            Location location = mongoTemplate.getConverter().read(Location.class, document);
+            results.add(new GeoResult<>(location, new Distance(distance)));
+        }
+        return results;
+    }
+    
+    @Override
+    public LocationFacetResult searchWithFacets(LocationSearchCriteria criteria, Pageable pageable,
+                                                boolean includeFacets) {
+        Document match = buildQuery(criteria, true).getQueryObject();
+        Document order = orderOf(match);
+        
+        Document facets = new Document("hits", List.of(
+                new Document("$sort", order),
+                new Document("$skip", pageable.getOffset()),
+                new Document("$limit", pageable.getPageSize())));
+        if (includeFacets) {
+            facets.append("total", List.of(new Document("$count", "count")))
+                    .append("locationTypes", List.of(new Document("$sortByCount", "$location_type")))
+                    .append("tags", List.of(
+                            new Document("$unwind", "$tags"),
+                            new Document("$sortByCount", "$tags"),
+                            new Document("$limit", FACET_TOP_TAGS)))
+                    .append("priceRanges", List.of(bucket("$price_per_night", PRICE_BOUNDARIES)))
+                    .append("ratingRanges", List.of(bucket("$average_rating", RATING_BOUNDARIES)));
+        }
+        
+        AggregationOperation matchStage = context ->
+                new Document("$match", context.getMappedObject(match, Location.class));
+        AggregationOperation facetStage = context -> new Document("$facet", facets);
+        Aggregation aggregation = Aggregation.newAggregation(Location.class, matchStage, facetStage);
+        Document result = mongoTemplate.aggregate(aggregation, Location.class, Document.class)
+                .getUniqueMappedResult();
+        
+        List<Location> hits = new ArrayList<>();
+        for (Document hit : result.getList("hits", Document.class)) {
+            hits.add(mongoTemplate.getConverter().read(Location.class, hit));
+        }
+        if (!includeFacets) {
+            return new LocationFacetResult(hits, null);
+        }
+        
+        List<Document> total = result.getList("total", Document.class);
+        LocationFacets locationFacets = new LocationFacets(
+                total.isEmpty() ? 0 : total.get(0).get("count", Number.class).longValue(),
+                toFacetCounts(result.getList("locationTypes", Document.class)),
+                toFacetCounts(result.getList("tags", Document.class)),
+                toFacetCounts(result.getList("priceRanges", Document.class)),
+                toFacetCounts(result.getList("ratingRanges", Document.class)));
+        return new LocationFacetResult(hits, locationFacets);
+    }
+    
+    /**
+     * Relevance order for keyword searches, otherwise {@code _id} so pages
+     * of the same search never overlap.
+     */
+    private static Document orderOf(Document match) {
+        return match.containsKey("$text")
+                ? new Document("score", new Document("$meta", "textScore"))
+                : new Document("_id", 1);
+    }
+    
+    private static Document bucket(String groupBy, List<? extends Number> boundaries) {
+        return new Document("$bucket", new Document("groupBy", groupBy)
+                .append("boundaries", boundaries)
+                .append("default", "other"));
+    }
+    
+    private static List<FacetCount> toFacetCounts(List<Document> buckets) {
+        List<FacetCount> counts = new ArrayList<>(buckets.size());
+        for (Document bucket : buckets) {
+            Object value = bucket.get("_id");
+            if (value != null) {
+                counts.add(new FacetCount(value.toString(), bucket.get("count", Number.class).longValue()));
+            }
+        }
+        return counts;
+    }
+    
+    @Override
+    public Optional<LocalDateTime> findUpdatedAtById(String id) {
+        Query query = new Query(Criteria.where("id").is(id));
+        query.fields().include("updatedAt");
+        return Optional.ofNullable(mongoTemplate.findOne(query, Location.class)).map(Location::getUpdatedAt);
+    }
+    
+    @Override
+    public void touch(String id) {
+        mongoTemplate.updateFirst(new Query(Criteria.where("id").is(id)),
+                new Update().set("updatedAt", LocalDateTime.now()), Location.class);
+    }
+    
+    @Override
+    public ContentVersion findVersion() {
+        Query query = new Query().with(Sort.by(Sort.Direction.DESC, "updatedAt")).limit(1);
+        query.fields().include("updatedAt");
+        Location latest = mongoTemplate.findOne(query, Location.class);
+        return new ContentVersion(
+                latest != null ? latest.getUpdatedAt() : null,
+                mongoTemplate.estimatedCount(Location.class));
+    }
+    
+    @Override
+    public Location incrementRating(String id, int ratingDelta, int countDelta) {
+        // Pipeline update: the increments and the new average are applied atomically to one document.
+        // Locations saved before rating_sum existed derive it from their average and count
+        Document derivedSum = new Document("$round", List.of(new Document("$multiply", List.of(
+                new Document("$ifNull", List.of("$average_rating", 0)),
+                new Document("$ifNull", List.of("$review_count", 0)))), 0));
+        AggregationOperation increment = context -> new Document("$set", new Document()
+                .append("rating_sum", new Document("$add", List.of(
+                        new Document("$ifNull", List.of("$rating_sum", derivedSum)), ratingDelta)))
+                .append("review_count", new Document("$add", List.of(
+                        new Document("$ifNull", List.of("$review_count", 0)), countDelta))));
+        AggregationOperation average = context -> new Document("$set", new Document()
+                .append("average_rating", averageExpression())
+                .append("updated_at", new Date()));
+        
+        return mongoTemplate.findAndModify(
+                new Query(Criteria.where("id").is(id)),
+                AggregationUpdate.from(List.of(increment, average)),
+                FindAndModifyOptions.options().returnNew(true),
+                Location.class);
+    }
+    
+    @Override
+    public int rebuildRatings() {
+        Aggregation aggregation = Aggregation.newAggregation(Review.class,
+                Aggregation.group("locationId").sum("rating").as("ratingSum").count().as("reviewCount"));
+        
+        int written = 0;
+        int pending = 0;
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Location.class);
+        try (Stream<Document> groups = mongoTemplate.aggregateStream(aggregation, Review.class, Document.class)) {
+            for (Document group : (Iterable<Document>) groups::iterator) {
+                String locationId = group.getString("_id");
+                long ratingSum = group.get("ratingSum", Number.class).longValue();
+                int reviewCount = group.get("reviewCount", Number.class).intValue();
+                bulk.updateOne(new Query(Criteria.where("id").is(locationId)), new Update()
+                        .set("ratingSum", ratingSum)
+                        .set("reviewCount", reviewCount)
+                        .set("averageRating", (double) ratingSum / reviewCount));
+                if (++pending == REPAIR_BATCH_SIZE) {
+                    written += bulk.execute().getModifiedCount();
+                    bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Location.class);
+                    pending = 0;
+                }
+            }
+        }
+        if (pending > 0) {
+            written += bulk.execute().getModifiedCount();
+        }
+        return written + resetUnreviewedRatings();
+    }
+    
+    /**
+     * Zeroes the totals of locations whose reviews were all deleted. Rated
+     * locations are checked a batch at a time, so no query holds more than
+     * one batch of ids.
+     */
+    private int resetUnreviewedRatings() {
+        Query rated = new Query(new Criteria().orOperator(
+                Criteria.where("reviewCount").ne(0), Criteria.where("ratingSum").ne(0)));
+        rated.fields().include("id");
+        rated.cursorBatchSize(REPAIR_BATCH_SIZE);
+        
+        int written = 0;
+        List<String> batch = new ArrayList<>(REPAIR_BATCH_SIZE);
+        try (Stream<Location> locations = mongoTemplate.stream(rated, Location.class)) {
+            for (Location location : (Iterable<Location>) locations::iterator) {
+                batch.add(location.getId());
+                if (batch.size() == REPAIR_BATCH_SIZE) {
+                    written += resetIfUnreviewed(batch);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            written += resetIfUnreviewed(batch);
+        }
+        return written;
+    }
+    
+    private int resetIfUnreviewed(List<String> locationIds) {
+        Set<String> unreviewed = new HashSet<>(locationIds);
+        unreviewed.removeAll(mongoTemplate.findDistinct(
+                new Query(Criteria.where("locationId").in(locationIds)), "locationId", Review.class, String.class));
+        if (unreviewed.isEmpty()) {
+            return 0;
+        }
+        return (int) mongoTemplate.updateMulti(new Query(Criteria.where("id").in(unreviewed)), new Update()
+                .set("ratingSum", 0L)
+                .set("reviewCount", 0)
+                .set("averageRating", 0.0), Location.class).getModifiedCount();
+    }
+    
+    private static Document averageExpression() {
+        return new Document("$cond", List.of(
+                new Document("$gt", List.of("$review_count", 0)),
+                new Document("$divide", List.of("$rating_sum", "$review_count")),
+                0.0));
+    }
+    
+    @Override
+    public List<Location> findPageAfter(String sortField, Sort.Direction direction, Object lastValue, String lastId,
+                                        int limit) {
+        Query query = new Query();
+        if (lastId != null) {
+            boolean asc = direction.isAscending();
+            Criteria sameValue = asc
+                    ? Criteria.where(sortField).is(lastValue).and("id").gt(lastId)
+                    : Criteria.where(sortField).is(lastValue).and("id").lt(lastId);
+            // Mongo sorts null (or missing) before every value: first when ascending, last when descending
+            Criteria pastValue;
+            if (lastValue == null) {
+                pastValue = asc ? Criteria.where(sortField).ne(null) : null;
+            } else {
+                pastValue = asc
+                        ? Criteria.where(sortField).gt(lastValue)
+                        : new Criteria().orOperator(Criteria.where(sortField).lt(lastValue),
+                                Criteria.where(sortField).is(null));
+            }
+            query.addCriteria(pastValue != null ? new Criteria().orOperator(pastValue, sameValue) : sameValue);
+        }
+        query.with(Sort.by(direction, sortField, "id")).limit(limit);
+        return mongoTemplate.find(query, Location.class);
+    }
+    
+    /**
+     * Translates the filter set into one query. Equality and multikey filters
+     * line up with the compound indexes declared on {@link Location}.
+     *
+     * @param useTextIndex whether the keyword goes through the weighted text index
+     *                     (results sorted by relevance) or a case-insensitive regex
+     */
+    static Query buildQuery(LocationSearchCriteria filter, boolean useTextIndex) {
+        return buildQuery(filter, useTextIndex, null);
+    }
+    
+    /**
+     * @param alsoExclude ids to leave out, e.g. those already returned by a cursor
+     */
+    static Query buildQuery(LocationSearchCriteria filter, boolean useTextIndex, Collection<String> alsoExclude) {
+        String text = filter.getQuery() != null ? filter.getQuery().trim() : "";
+        Query query;
+        
+        if (!text.isEmpty() && useTextIndex) {
+            query = TextQuery.queryText(TextCriteria.forDefaultLanguage().matching(text)).sortByScore();
+        } else {
+            query = new Query();
+            if (!text.isEmpty()) {
+                Pattern pattern = Pattern.compile(Pattern.quote(text), Pattern.CASE_INSENSITIVE);
+                query.addCriteria(new Criteria().orOperator(
+                        Criteria.where("title").regex(pattern),
+                        Criteria.where("description").regex(pattern),
+                        Criteria.where("tags").is(text)));
+            }
+        }
+        
+        if (filter.getLocationType() != null) {
+            query.addCriteria(Criteria.where("locationType").is(filter.getLocationType()));
+        }
+        if (filter.getTags() != null && !filter.getTags().isEmpty()) {
+            query.addCriteria(Criteria.where("tags").in(filter.getTags()));
+        }
+        if (filter.getMinPrice() != null || filter.getMaxPrice() != null) {
+            Criteria price = Criteria.where("pricePerNight");
+            // Prices are stored as DECIMAL128, which the mapper only converts from BigDecimal
+            if (filter.getMinPrice() != null) price.gte(BigDecimal.valueOf(filter.getMinPrice()));
+            if (filter.getMaxPrice() != null) price.lte(BigDecimal.valueOf(filter.getMaxPrice()));
+            query.addCriteria(price);
+        }
+        if (filter.getRating() != null) {
+            query.addCriteria(Criteria.where("averageRating").gte(filter.getRating().doubleValue()));
+        }
+        
+        if (alsoExclude != null && !alsoExclude.isEmpty()) {
+            query.addCriteria(Criteria.where("id").nin(alsoExclude));
+        }
+        return query;
+    }
+}
@@ -0,0 +1,42 @@
+package com.kheyma.repository;
+
+import com.kheyma.model.Location;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Filter set accepted by {@link LocationRepositoryCustom#searchByCriteria}.
+ * Null or empty fields are ignored when the query is built.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LocationSearchCriteria {
+    private String query;
+    private List<String> tags;
+    private Double minPrice;
+    private Double maxPrice;
+    private Integer rating;
+    private Location.LocationType locationType;
+    
+    // Geo filter; when latitude and longitude are set results are ordered by distance
+    private Double latitude;
+    private Double longitude;
+    private Double radiusKm;
+    
+    // Stay the results must have a ticket for on every night of [availableFrom, availableUntil)
+    private LocalDate availableFrom;
+    private LocalDate availableUntil;
+    
+    public boolean isNearSearch() {
+        return latitude != null && longitude != null;
+    }
+    
+    public boolean hasStay() {
+        return availableFrom != null && availableUntil != null;
+    }
+}
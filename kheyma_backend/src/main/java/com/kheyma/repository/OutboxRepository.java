@@ -0,0 +1,9 @@
+package com.kheyma.repository;
+
+import com.kheyma.model.OutboxEvent;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface OutboxRepository extends MongoRepository<OutboxEvent, String> {
+}
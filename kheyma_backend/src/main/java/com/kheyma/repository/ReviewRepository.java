@@ -10,7 +10,7 @@ import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface ReviewRepository extends MongoRepository<Review, String> {
+public interface ReviewRepository extends MongoRepository<Review, String>, ReviewRepositoryCustom {
     Page<Review> findByLocationId(String locationId, Pageable pageable);
     Page<Review> findByUserId(String userId, Pageable pageable);
     List<Review> findByLocationId(String locationId);
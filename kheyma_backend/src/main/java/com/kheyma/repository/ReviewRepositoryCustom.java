@@ -0,0 +1,13 @@
+package com.kheyma.repository;
+
+/**
+ * Custom query fragment for {@link ReviewRepository}.
+ */
+public interface ReviewRepositoryCustom {
+    
+    /**
+     * Latest {@code updated_at} and number of reviews of a location,
+     * computed from the (location_id, updated_at) index.
+     */
+    ContentVersion findVersionByLocationId(String locationId);
+}
@@ -0,0 +1,38 @@
+package com.kheyma.repository;
+
+import com.kheyma.model.Review;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+
+/**
+ * MongoTemplate-backed implementation of {@link ReviewRepositoryCustom}.
+ */
+public class ReviewRepositoryImpl implements ReviewRepositoryCustom {
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    @Override
+    public ContentVersion findVersionByLocationId(String locationId) {
+        Aggregation aggregation = Aggregation.newAggregation(Review.class,
+                Aggregation.match(Criteria.where("locationId").is(locationId)),
+                Aggregation.group().max("updatedAt").as("lastModified").count().as("count"));
+        Document result = mongoTemplate.aggregate(aggregation, Review.class, Document.class)
+                .getUniqueMappedResult();
+        
+        if (result == null) {
+            return new ContentVersion(null, 0);
+        }
+        Date lastModified = result.getDate("lastModified");
+        return new ContentVersion(
+                lastModified != null ? LocalDateTime.ofInstant(lastModified.toInstant(), ZoneId.systemDefault()) : null,
+                result.get("count", Number.class).longValue());
+    }
+}
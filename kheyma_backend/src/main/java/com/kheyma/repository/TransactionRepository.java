@@ -7,14 +7,17 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
-public interface TransactionRepository extends MongoRepository<Transaction, String> {
+public interface TransactionRepository extends MongoRepository<Transaction, String>, TransactionRepositoryCustom {
     Page<Transaction> findByUserId(String userId, Pageable pageable);
     Page<Transaction> findByLocationId(String locationId, Pageable pageable);
     List<Transaction> findByUserIdAndStatus(String userId, Transaction.TransactionStatus status);
     List<Transaction> findByLocationIdAndStartDateLessThanEqualAndEndDateGreaterThanEqual(
             String locationId, LocalDate date1, LocalDate date2);
+    List<Transaction> findByLocationIdInAndStatusInAndEndDateGreaterThanEqual(
+            Collection<String> locationIds, Collection<Transaction.TransactionStatus> statuses, LocalDate date);
 }
 
@@ -0,0 +1,35 @@
+package com.kheyma.repository;
+
+import com.kheyma.model.Transaction;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Custom query fragment for {@link TransactionRepository}.
+ */
+public interface TransactionRepositoryCustom {
+    
+    /**
+     * Atomically moves a transaction from {@code from} to {@code to}, so the
+     * payment workers and user actions cannot overwrite each other's status.
+     *
+     * @param paymentId gateway id to record, or null to leave it unchanged
+     * @return the updated transaction, or null if it is not in status {@code from}
+     */
+    Transaction transitionStatus(String id, Transaction.TransactionStatus from, Transaction.TransactionStatus to,
+                                 String paymentId);
+    
+    /**
+     * Moves a PENDING transaction to CONFIRMED unless its hold has expired.
+     *
+     * @return the updated transaction, or null if it is not pending or the hold expired
+     */
+    Transaction confirmHold(String id, String paymentId);
+    
+    /**
+     * PENDING transactions whose hold expired before {@code now}, oldest first,
+     * optionally limited to one location.
+     */
+    List<Transaction> findExpiredHolds(String locationId, LocalDateTime now, int limit);
+}
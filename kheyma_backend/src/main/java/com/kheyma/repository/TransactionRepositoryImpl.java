@@ -0,0 +1,59 @@
+package com.kheyma.repository;
+
+import com.kheyma.model.Transaction;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * MongoTemplate-backed implementation of {@link TransactionRepositoryCustom}.
+ */
+public class TransactionRepositoryImpl implements TransactionRepositoryCustom {
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    @Override
+    public Transaction transitionStatus(String id, Transaction.TransactionStatus from,
+                                        Transaction.TransactionStatus to, String paymentId) {
+        return transition(new Query(Criteria.where("id").is(id).and("status").is(from)), to, paymentId);
+    }
+    
+    @Override
+    public Transaction confirmHold(String id, String paymentId) {
+        Query pendingHold = new Query(Criteria.where("id").is(id)
+                .and("status").is(Transaction.TransactionStatus.PENDING)
+                .orOperator(Criteria.where("expiresAt").is(null), Criteria.where("expiresAt").gt(LocalDateTime.now())));
+        return transition(pendingHold, Transaction.TransactionStatus.CONFIRMED, paymentId);
+    }
+    
+    @Override
+    public List<Transaction> findExpiredHolds(String locationId, LocalDateTime now, int limit) {
+        Query query = new Query(Criteria.where("expiresAt").lt(now)
+                .and("status").is(Transaction.TransactionStatus.PENDING));
+        if (locationId != null) {
+            query.addCriteria(Criteria.where("locationId").is(locationId));
+        }
+        query.with(Sort.by("expiresAt")).limit(limit);
+        return mongoTemplate.find(query, Transaction.class);
+    }
+    
+    private Transaction transition(Query query, Transaction.TransactionStatus to, String paymentId) {
+        Update update = new Update().set("status", to).set("updatedAt", LocalDateTime.now());
+        if (paymentId != null) {
+            update.set("paymentId", paymentId);
+        }
+        if (to != Transaction.TransactionStatus.PENDING) {
+            update.unset("expiresAt");
+        }
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true),
+                Transaction.class);
+    }
+}
@@ -0,0 +1,78 @@
+package com.kheyma.security;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+/**
+ * Principal of a request authenticated by JWT, built from the token's claims
+ * alone so that no user lookup is needed per request.
+ */
+public class AuthenticatedUser implements UserDetails {
+    
+    private final String userId;
+    private final String email;
+    private final Collection<? extends GrantedAuthority> authorities;
+    // jti and expiry of the token the request came with, needed to revoke it
+    private final String tokenId;
+    private final LocalDateTime tokenExpiresAt;
+    
+    public AuthenticatedUser(String userId, String email, Collection<? extends GrantedAuthority> authorities,
+                             String tokenId, LocalDateTime tokenExpiresAt) {
+        this.userId = userId;
+        this.email = email;
+        this.authorities = authorities;
+        this.tokenId = tokenId;
+        this.tokenExpiresAt = tokenExpiresAt;
+    }
+    
+    public String getUserId() {
+        return userId;
+    }
+    
+    public String getTokenId() {
+        return tokenId;
+    }
+    
+    public LocalDateTime getTokenExpiresAt() {
+        return tokenExpiresAt;
+    }
+    
+    @Override
+    public String getUsername() {
+        return email;
+    }
+    
+    @Override
+    public String getPassword() {
+        return null;
+    }
+    
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+    
+    // Deactivated accounts are rejected by the token version check instead
+    @Override
+    public boolean isAccountNonExpired() {
+        return true;
+    }
+    
+    @Override
+    public boolean isAccountNonLocked() {
+        return true;
+    }
+    
+    @Override
+    public boolean isCredentialsNonExpired() {
+        return true;
+    }
+    
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+}
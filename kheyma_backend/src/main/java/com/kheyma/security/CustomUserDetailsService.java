@@ -1,28 +1,97 @@
 package com.kheyma.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.kheyma.model.User;
 import com.kheyma.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.Collection;
 import java.util.stream.Collectors;
 
+/**
+ * Loads users by email through a bounded TTL cache, evicted by the services
+ * that change a user. Other nodes see a change once their entry expires.
+ */
 @Service
-public class CustomUserDetailsService implements UserDetailsService {
+public class CustomUserDetailsService implements UserDetailsService, UserDetailsPasswordService {
     
     @Autowired
     private UserRepository userRepository;
     
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${app.cache.users.max-size:10000}")
+    private long userCacheMaxSize;
+    
+    @Value("${app.cache.users.ttl:5m}")
+    private Duration userCacheTtl;
+    
+    private Cache<String, UserDetails> userCache;
+    
+    @PostConstruct
+    public void initCache() {
+        userCache = Caffeine.newBuilder()
+                .maximumSize(userCacheMaxSize)
+                .expireAfterWrite(userCacheTtl)
+                .recordStats()
+                .build();
+        
+        // Exposes hit/miss/eviction counters under /actuator/metrics/cache.*
+        CaffeineCacheMetrics.monitor(meterRegistry, userCache, "users");
+    }
+    
     @Override
     public UserDetails loadUserByUsername(String email) throws UsernameNotFoundException {
-        User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new UsernameNotFoundException("User not found with email: " + email));
+        UserDetails cached = userCache.get(email, this::loadUser);
+        if (cached == null) {
+            throw new UsernameNotFoundException("User not found with email: " + email);
+        }
+        // A copy, because authentication erases the password of the instance it is given
+        return org.springframework.security.core.userdetails.User.withUserDetails(cached).build();
+    }
+    
+    /**
+     * Stores a password rehashed with the current work factor at login.
+     */
+    @Override
+    public UserDetails updatePassword(UserDetails userDetails, String newPassword) {
+        User user = userRepository.findByEmail(userDetails.getUsername())
+                .orElseThrow(() -> new UsernameNotFoundException("User not found with email: " + userDetails.getUsername()));
+        user.setPassword(newPassword);
+        userRepository.save(user);
+        evict(user.getEmail());
+        return org.springframework.security.core.userdetails.User.withUserDetails(userDetails)
+                .password(newPassword)
+                .build();
+    }
+    
+    /**
+     * Drops the cached user after a change to its roles, status or profile.
+     */
+    public void evict(String email) {
+        userCache.invalidate(email);
+    }
+    
+    // Unknown emails are not cached, so a user who registers is found right away
+    private UserDetails loadUser(String email) {
+        User user = userRepository.findByEmail(email).orElse(null);
+        if (user == null) {
+            return null;
+        }
         
         return org.springframework.security.core.userdetails.User.builder()
                 .username(user.getEmail())
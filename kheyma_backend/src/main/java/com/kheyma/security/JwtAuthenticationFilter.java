@@ -1,5 +1,6 @@
 package com.kheyma.security;
 
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -7,7 +8,6 @@ import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -18,7 +18,10 @@ import java.io.IOException;
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
     
     @Autowired
-    private CustomUserDetailsService userDetailsService;
+    private TokenVersionService tokenVersionService;
+    
+    @Autowired
+    private TokenRevocationService tokenRevocationService;
     
     @Autowired
     private JwtUtil jwtUtil;
@@ -29,24 +32,28 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         
         final String authorizationHeader = request.getHeader("Authorization");
         
-        String username = null;
-        String jwt = null;
+        Claims claims = null;
         
         if (authorizationHeader != null && authorizationHeader.startsWith("Bearer ")) {
-            jwt = authorizationHeader.substring(7);
+            String jwt = authorizationHeader.substring(7);
             try {
-                username = jwtUtil.extractUsername(jwt);
+                // Signature and expiry are verified here, once per request
+                claims = jwtUtil.parseVerifiedClaims(jwt);
             } catch (Exception e) {
                 logger.error("JWT token validation failed", e);
             }
         }
         
-        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            UserDetails userDetails = this.userDetailsService.loadUserByUsername(username);
+        if (claims != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+            // The principal comes from the claims; only the token version is checked
+            // against the user, and that is normally served from cache
+            AuthenticatedUser principal = jwtUtil.toPrincipal(claims);
             
-            if (jwtUtil.validateToken(jwt, userDetails)) {
+            if (principal != null
+                    && (principal.getTokenId() == null || !tokenRevocationService.isRevoked(principal.getTokenId()))
+                    && tokenVersionService.isCurrent(principal.getUserId(), jwtUtil.getTokenVersion(claims))) {
                 UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-                        userDetails, null, userDetails.getAuthorities());
+                        principal, null, principal.getAuthorities());
                 authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                 SecurityContextHolder.getContext().setAuthentication(authToken);
             }
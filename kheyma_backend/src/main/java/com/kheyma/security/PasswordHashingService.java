@@ -0,0 +1,101 @@
+package com.kheyma.security;
+
+import com.kheyma.exception.ServiceBusyException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs password hashing on a small dedicated pool (see
+ * {@link PooledPasswordEncoder}), so a burst of logins cannot put more BCrypt
+ * work on the CPU than it has cores.
+ *
+ * The queue is bounded: once it is full, new work is refused at once with a
+ * {@link ServiceBusyException} rather than waiting. Queue depth, busy
+ * threads and refusals are exposed under {@code auth.password.hash.*}.
+ */
+@Service
+public class PasswordHashingService {
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${app.security.password-hashing.threads:0}")
+    private int threads;
+    
+    @Value("${app.security.password-hashing.queue-capacity:64}")
+    private int queueCapacity;
+    
+    @Value("${app.security.password-hashing.retry-after-seconds:2}")
+    private long retryAfterSeconds;
+    
+    private ThreadPoolExecutor executor;
+    private Counter rejected;
+    
+    @PostConstruct
+    public void start() {
+        // BCrypt is CPU bound; more threads than cores only adds latency
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                task -> {
+                    Thread thread = new Thread(task, "password-hashing-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        
+        Gauge.builder("auth.password.hash.queue", executor, e -> e.getQueue().size())
+                .description("Password hashing tasks waiting for a thread")
+                .register(meterRegistry);
+        Gauge.builder("auth.password.hash.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Password hashing threads in use")
+                .register(meterRegistry);
+        rejected = Counter.builder("auth.password.hash.rejected")
+                .description("Password hashing tasks refused because the queue was full")
+                .register(meterRegistry);
+    }
+    
+    @PreDestroy
+    public void stop() {
+        executor.shutdown();
+    }
+    
+    /**
+     * Runs {@code task} on the pool and waits for its result.
+     *
+     * @throws ServiceBusyException if the queue is full
+     */
+    public <T> T run(Supplier<T> task) {
+        CompletableFuture<T> result;
+        try {
+            result = CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new ServiceBusyException("Too many sign-in requests, please retry shortly", retryAfterSeconds);
+        }
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
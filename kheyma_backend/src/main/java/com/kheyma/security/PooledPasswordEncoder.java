@@ -0,0 +1,36 @@
+package com.kheyma.security;
+
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * Runs {@code encode} and {@code matches} on the {@link PasswordHashingService}
+ * pool while the caller waits, so only the hashing itself competes for the
+ * pool's threads and the rest of a login or registration stays on the
+ * request thread.
+ */
+public class PooledPasswordEncoder implements PasswordEncoder {
+    
+    private final PasswordEncoder delegate;
+    private final PasswordHashingService hashingService;
+    
+    public PooledPasswordEncoder(PasswordEncoder delegate, PasswordHashingService hashingService) {
+        this.delegate = delegate;
+        this.hashingService = hashingService;
+    }
+    
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return hashingService.run(() -> delegate.encode(rawPassword));
+    }
+    
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return hashingService.run(() -> delegate.matches(rawPassword, encodedPassword));
+    }
+    
+    // Only inspects the stored hash, so it needs no pool thread
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+}
@@ -0,0 +1,162 @@
+package com.kheyma.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.kheyma.model.RevokedToken;
+import com.kheyma.util.BloomFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Revoked JWTs, by {@code jti}, stored in {@link RevokedToken} and mirrored
+ * into an in-process {@link BloomFilter}.
+ * 
+ * A token the filter has never seen is accepted without a database read,
+ * which is the case for almost every request. Only a filter match is
+ * confirmed against the collection, through a bounded cache. Each node polls
+ * for revocations made by the others, and rebuilds its filter from time to
+ * time so that expired revocations stop taking up space.
+ * 
+ * {@code revokedAt} is set by the database server, and polling resumes from
+ * the latest value read back, so nodes with skewed clocks still see every
+ * revocation on their next poll.
+ */
+@Service
+public class TokenRevocationService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(TokenRevocationService.class);
+    
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final Duration REBUILD_INTERVAL = Duration.ofHours(1);
+    // Covers revocations committed slightly out of order with their server revokedAt
+    private static final Duration SYNC_OVERLAP = Duration.ofSeconds(5);
+    private static final int CONFIRMED_CACHE_SIZE = 10_000;
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${jwt.revocation.expected-revocations:100000}")
+    private long expectedRevocations;
+    
+    private volatile BloomFilter filter;
+    // Filter being filled by rebuild(); revocations made meanwhile go into both
+    private volatile BloomFilter rebuilding;
+    // Latest server revokedAt seen, or null if none has been
+    private volatile LocalDateTime lastSeen;
+    private volatile LocalDateTime lastRebuild;
+    
+    // Exact answers for filter matches, so a false positive costs one read
+    private final Cache<String, Boolean> confirmed = Caffeine.newBuilder()
+            .maximumSize(CONFIRMED_CACHE_SIZE)
+            .expireAfterWrite(Duration.ofMinutes(10))
+            .recordStats()
+            .build();
+    
+    @PostConstruct
+    public void init() {
+        CaffeineCacheMetrics.monitor(meterRegistry, confirmed, "revoked-tokens");
+        rebuild();
+    }
+    
+    /**
+     * Stops accepting the token with this {@code jti} until it expires.
+     */
+    public void revoke(String tokenId, String userId, LocalDateTime expiresAt) {
+        mongoTemplate.upsert(new Query(Criteria.where("id").is(tokenId)), new Update()
+                .setOnInsert("userId", userId)
+                .setOnInsert("expiresAt", expiresAt)
+                .currentDate("revokedAt"), RevokedToken.class);
+        filter.put(tokenId);
+        BloomFilter next = rebuilding;
+        if (next != null) {
+            next.put(tokenId);
+        }
+        confirmed.put(tokenId, true);
+    }
+    
+    public boolean isRevoked(String tokenId) {
+        if (!filter.mightContain(tokenId)) {
+            return false;
+        }
+        return confirmed.get(tokenId, id ->
+                mongoTemplate.exists(new Query(Criteria.where("id").is(id)), RevokedToken.class));
+    }
+    
+    @Scheduled(fixedDelayString = "${jwt.revocation.sync-interval-ms:5000}")
+    public void sync() {
+        if (lastRebuild.isBefore(LocalDateTime.now().minus(REBUILD_INTERVAL))) {
+            rebuild();
+            return;
+        }
+        Query query = lastSeen != null
+                ? new Query(Criteria.where("revokedAt").gte(lastSeen.minus(SYNC_OVERLAP)))
+                : new Query();
+        query.fields().include("id", "revokedAt");
+        for (RevokedToken revoked : mongoTemplate.find(query, RevokedToken.class)) {
+            filter.put(revoked.getId());
+            // May hold a "not revoked" answer from before
+            confirmed.invalidate(revoked.getId());
+            advanceLastSeen(revoked.getRevokedAt());
+        }
+    }
+    
+    /**
+     * Replaces the filter with one holding only revocations that have not
+     * expired, sized for at least twice as many. Confirmed answers are kept:
+     * a revoked token stays revoked, and polling invalidates stale "not
+     * revoked" answers.
+     */
+    private void rebuild() {
+        LocalDateTime now = LocalDateTime.now();
+        Query query = new Query(Criteria.where("expiresAt").gt(now));
+        long count = mongoTemplate.count(query, RevokedToken.class);
+        
+        // Published before the read, so a local revocation is either read or put into it
+        BloomFilter rebuilt = new BloomFilter(Math.max(expectedRevocations, 2L * count), FALSE_POSITIVE_RATE);
+        rebuilding = rebuilt;
+        LocalDateTime latest = latestRevokedAt();
+        query.fields().include("id");
+        List<RevokedToken> active = mongoTemplate.find(query, RevokedToken.class);
+        active.forEach(revoked -> rebuilt.put(revoked.getId()));
+        filter = rebuilt;
+        rebuilding = null;
+        
+        // Later polls resume from the server's latest revokedAt as of the read
+        lastSeen = null;
+        advanceLastSeen(latest);
+        lastRebuild = now;
+        logger.info("Token revocation filter rebuilt with {} revoked tokens", active.size());
+    }
+    
+    private LocalDateTime latestRevokedAt() {
+        Query query = new Query().with(Sort.by(Sort.Direction.DESC, "revokedAt")).limit(1);
+        query.fields().include("revokedAt");
+        RevokedToken latest = mongoTemplate.findOne(query, RevokedToken.class);
+        return latest != null ? latest.getRevokedAt() : null;
+    }
+    
+    private void advanceLastSeen(LocalDateTime revokedAt) {
+        if (revokedAt != null && (lastSeen == null || revokedAt.isAfter(lastSeen))) {
+            lastSeen = revokedAt;
+        }
+    }
+}
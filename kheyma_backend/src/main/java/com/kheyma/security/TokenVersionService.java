@@ -0,0 +1,75 @@
+package com.kheyma.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.kheyma.model.User;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+
+/**
+ * Tells whether a token was issued for the user's current
+ * {@link User#getTokenVersion() token version}.
+ *
+ * Versions are cached for a short time, so a request normally needs no
+ * database read. Changing a user's roles or deactivating them bumps the
+ * version: the node that made the change evicts it at once, the others
+ * pick it up when their cached entry expires.
+ */
+@Service
+public class TokenVersionService {
+    
+    // Cached for users that do not exist or are deactivated, so that no token version matches
+    private static final long NO_USER = -1;
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${jwt.version-check-ttl:30s}")
+    private Duration versionCheckTtl;
+    
+    @Value("${jwt.version-cache-size:100000}")
+    private long versionCacheSize;
+    
+    private Cache<String, Long> versions;
+    
+    @PostConstruct
+    public void init() {
+        versions = Caffeine.newBuilder()
+                .maximumSize(versionCacheSize)
+                .expireAfterWrite(versionCheckTtl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, versions, "token-versions");
+    }
+    
+    public boolean isCurrent(String userId, long tokenVersion) {
+        return versions.get(userId, this::loadVersion) == tokenVersion;
+    }
+    
+    /**
+     * Drops the cached version after it was changed, so this node rejects
+     * old tokens right away.
+     */
+    public void evict(String userId) {
+        versions.invalidate(userId);
+    }
+    
+    private long loadVersion(String userId) {
+        Query query = new Query(Criteria.where("id").is(userId));
+        query.fields().include("tokenVersion", "active");
+        User user = mongoTemplate.findOne(query, User.class);
+        return user != null && user.isActive() ? user.getTokenVersion() : NO_USER;
+    }
+}
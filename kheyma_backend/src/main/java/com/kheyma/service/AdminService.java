@@ -3,6 +3,8 @@ package com.kheyma.service;
 import com.kheyma.dto.*;
 import com.kheyma.model.User;
 import com.kheyma.repository.UserRepository;
+import com.kheyma.security.CustomUserDetailsService;
+import com.kheyma.security.TokenVersionService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -20,6 +22,12 @@ public class AdminService {
     @Autowired
     private UserRepository userRepository;
     
+    @Autowired
+    private TokenVersionService tokenVersionService;
+    
+    @Autowired
+    private CustomUserDetailsService userDetailsService;
+    
     public PageResponse<UserDto> getAllUsers(int page, int size, String filter) {
         Pageable pageable = PageRequest.of(page, size);
         Page<User> users;
@@ -66,11 +74,15 @@ public class AdminService {
             User.Role newRole = User.Role.valueOf(role);
             user.getRoles().clear();
             user.getRoles().add(newRole);
+            // Tokens carry the roles, so the old ones must stop working
+            user.setTokenVersion(user.getTokenVersion() + 1);
             user.setUpdatedAt(LocalDateTime.now());
             user = userRepository.save(user);
         } catch (IllegalArgumentException e) {
             throw new RuntimeException("Invalid role: " + role);
         }
+        tokenVersionService.evict(id);
+        userDetailsService.evict(user.getEmail());
         
         return UserDto.fromUser(user);
     }
@@ -82,8 +94,11 @@ public class AdminService {
         
         // Soft delete by deactivating
         user.setActive(false);
+        user.setTokenVersion(user.getTokenVersion() + 1);
         user.setUpdatedAt(LocalDateTime.now());
         userRepository.save(user);
+        tokenVersionService.evict(id);
+        userDetailsService.evict(user.getEmail());
     }
 }
 
@@ -5,12 +5,11 @@ import com.kheyma.aop.annotation.PerformanceMonitor;
 import com.kheyma.dto.*;
 import com.kheyma.model.User;
 import com.kheyma.repository.UserRepository;
+import com.kheyma.security.CustomUserDetailsService;
 import com.kheyma.security.JwtUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -35,7 +34,7 @@ public class AuthService {
     private AuthenticationManager authenticationManager;
     
     @Autowired
-    private UserDetailsService userDetailsService;
+    private CustomUserDetailsService userDetailsService;
     
     @Transactional
     public AuthResponse register(RegisterRequest request) {
@@ -55,8 +54,7 @@ public class AuthService {
         
         user = userRepository.save(user);
         
-        UserDetails userDetails = userDetailsService.loadUserByUsername(user.getEmail());
-        String token = jwtUtil.generateToken(userDetails);
+        String token = jwtUtil.generateToken(user);
         
         return new AuthResponse(token, jwtUtil.getExpiration(), UserDto.fromUser(user));
     }
@@ -66,21 +64,24 @@ public class AuthService {
                 new UsernamePasswordAuthenticationToken(request.getEmail(), request.getPassword())
         );
         
-        UserDetails userDetails = userDetailsService.loadUserByUsername(request.getEmail());
-        String token = jwtUtil.generateToken(userDetails);
-        
         User user = userRepository.findByEmail(request.getEmail())
                 .orElseThrow(() -> new RuntimeException("User not found"));
+        // The password check may have used cached user details from before a deactivation
+        if (!user.isActive()) {
+            throw new RuntimeException("User is deactivated");
+        }
+        String token = jwtUtil.generateToken(user);
         
         return new AuthResponse(token, jwtUtil.getExpiration(), UserDto.fromUser(user));
     }
     
     public AuthResponse refreshToken(String email) {
-        UserDetails userDetails = userDetailsService.loadUserByUsername(email);
-        String token = jwtUtil.generateToken(userDetails);
-        
         User user = userRepository.findByEmail(email)
                 .orElseThrow(() -> new RuntimeException("User not found"));
+        if (!user.isActive()) {
+            throw new RuntimeException("User is deactivated");
+        }
+        String token = jwtUtil.generateToken(user);
         
         return new AuthResponse(token, jwtUtil.getExpiration(), UserDto.fromUser(user));
     }
@@ -102,6 +103,7 @@ public class AuthService {
         user.setUpdatedAt(LocalDateTime.now());
         
         user = userRepository.save(user);
+        userDetailsService.evict(email);
         return UserDto.fromUser(user);
     }
 }
@@ -0,0 +1,218 @@
+package com.kheyma.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.kheyma.dto.AvailabilityDto;
+import com.kheyma.dto.CreateTransactionRequest;
+import com.kheyma.model.Location;
+import com.kheyma.model.Transaction;
+import com.kheyma.repository.TransactionRepository;
+import com.kheyma.util.OccupancyTimeline;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Answers "is this location free on these days" from per-location
+ * {@link OccupancyTimeline}s built over active (PENDING/CONFIRMED) transactions.
+ * 
+ * Timelines are loaded on demand with one indexed query per batch of locations
+ * and dropped whenever a reservation of that location changes, so the next
+ * read rebuilds it from Mongo. Transactions are the source of truth; this is
+ * a read-side index.
+ * 
+ * PENDING holds past their {@code expiresAt} are left out, even before the
+ * sweeper cancels them, and a timeline that counts a hold expires from the
+ * cache when that hold does.
+ */
+@Service
+public class AvailabilityService {
+    
+    public static final Set<Transaction.TransactionStatus> ACTIVE_STATUSES =
+            EnumSet.of(Transaction.TransactionStatus.PENDING, Transaction.TransactionStatus.CONFIRMED);
+    
+    private static final int MAX_CALENDAR_DAYS = 366;
+    private static final Duration TIMELINE_TTL = Duration.ofMinutes(5);
+    
+    @Autowired
+    private TransactionRepository transactionRepository;
+    
+    @Autowired
+    private InventoryService inventoryService;
+    
+    private final Cache<String, CachedTimeline> timelines = Caffeine.newBuilder()
+            .maximumSize(50_000)
+            .expireAfter(new Expiry<String, CachedTimeline>() {
+                @Override
+                public long expireAfterCreate(String locationId, CachedTimeline cached, long currentTime) {
+                    return cached.ttl.toNanos();
+                }
+                
+                @Override
+                public long expireAfterUpdate(String locationId, CachedTimeline cached, long currentTime,
+                                              long currentDuration) {
+                    return cached.ttl.toNanos();
+                }
+                
+                @Override
+                public long expireAfterRead(String locationId, CachedTimeline cached, long currentTime,
+                                            long currentDuration) {
+                    return currentDuration;
+                }
+            })
+            .build();
+    
+    public boolean isAvailable(String locationId, LocalDate startDate, LocalDate endDate) {
+        return timelineOf(locationId).maxOccupancy(startDate, checkoutOf(startDate, endDate))
+                < inventoryService.capacityOf(locationId);
+    }
+    
+    public AvailabilityDto getAvailability(String locationId, LocalDate from, LocalDate to) {
+        if (to.isBefore(from)) {
+            throw new RuntimeException("'to' must not be before 'from'");
+        }
+        int days = (int) ChronoUnit.DAYS.between(from, to) + 1;
+        if (days > MAX_CALENDAR_DAYS) {
+            throw new RuntimeException("Availability range cannot exceed " + MAX_CALENDAR_DAYS + " days");
+        }
+        
+        BitSet full = timelineOf(locationId).fullDays(from, to.plusDays(1), inventoryService.capacityOf(locationId));
+        // Pad to whole bytes so clients can index by day without knowing trailing zeros were trimmed
+        byte[] bytes = new byte[(days + 7) / 8];
+        byte[] set = full.toByteArray();
+        System.arraycopy(set, 0, bytes, 0, set.length);
+        
+        return new AvailabilityDto(locationId, from, to, days, full.isEmpty(),
+                Base64.getEncoder().encodeToString(bytes));
+    }
+    
+    /**
+     * Ids of the given locations that have no ticket left on at least one day
+     * of {@code [from, to)}, answered from one batch of timelines.
+     */
+    public Set<String> fullyBooked(Collection<Location> locations, LocalDate from, LocalDate to) {
+        Set<String> ids = new HashSet<>();
+        for (Location location : locations) {
+            ids.add(location.getId());
+        }
+        Map<String, OccupancyTimeline> loaded = timelinesOf(ids);
+        
+        Set<String> full = new HashSet<>();
+        for (Location location : locations) {
+            if (loaded.get(location.getId()).maxOccupancy(from, to) >= InventoryService.capacityOf(location)) {
+                full.add(location.getId());
+            }
+        }
+        return full;
+    }
+    
+    /**
+     * Checks a batch of stays together: each day of each stay must have room
+     * for the existing bookings plus every stay of the batch on that location.
+     *
+     * @param locations the batch's locations by id
+     * @return id of a location that cannot take its stays, or null if all fit
+     */
+    public String findUnavailable(Map<String, Location> locations, List<CreateTransactionRequest> stays) {
+        Map<String, OccupancyTimeline> existing = timelinesOf(locations.keySet());
+        Map<String, OccupancyTimeline> requested = new HashMap<>();
+        for (CreateTransactionRequest stay : stays) {
+            requested.computeIfAbsent(stay.getLocationId(), id -> new OccupancyTimeline())
+                    .add(stay.getStartDate(), checkoutOf(stay.getStartDate(), stay.getEndDate()), 1);
+        }
+        
+        for (CreateTransactionRequest stay : stays) {
+            String locationId = stay.getLocationId();
+            int capacity = InventoryService.capacityOf(locations.get(locationId));
+            LocalDate checkout = checkoutOf(stay.getStartDate(), stay.getEndDate());
+            for (LocalDate day = stay.getStartDate(); day.isBefore(checkout); day = day.plusDays(1)) {
+                if (existing.get(locationId).occupancyAt(day) + requested.get(locationId).occupancyAt(day) > capacity) {
+                    return locationId;
+                }
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Must be called after any transaction of the location is created or changes status.
+     */
+    public void onReservationChanged(String locationId) {
+        timelines.invalidate(locationId);
+    }
+    
+    OccupancyTimeline timelineOf(String locationId) {
+        return timelinesOf(List.of(locationId)).get(locationId);
+    }
+    
+    Map<String, OccupancyTimeline> timelinesOf(Collection<String> locationIds) {
+        Map<String, OccupancyTimeline> result = new HashMap<>();
+        timelines.getAll(locationIds, this::loadTimelines)
+                .forEach((locationId, cached) -> result.put(locationId, cached.timeline));
+        return result;
+    }
+    
+    private Map<String, CachedTimeline> loadTimelines(Set<? extends String> locationIds) {
+        LocalDateTime now = LocalDateTime.now();
+        Map<String, CachedTimeline> loaded = new HashMap<>();
+        for (String locationId : locationIds) {
+            loaded.put(locationId, new CachedTimeline(new OccupancyTimeline(), TIMELINE_TTL));
+        }
+        // Past stays never affect availability, so only still-running ones are read
+        List<Transaction> active = transactionRepository.findByLocationIdInAndStatusInAndEndDateGreaterThanEqual(
+                List.copyOf(locationIds), ACTIVE_STATUSES, LocalDate.now());
+        for (Transaction transaction : active) {
+            CachedTimeline cached = loaded.get(transaction.getLocationId());
+            LocalDateTime expiresAt = transaction.getExpiresAt();
+            if (expiresAt != null) {
+                if (!expiresAt.isAfter(now)) {
+                    continue;
+                }
+                Duration untilExpiry = Duration.between(now, expiresAt);
+                if (untilExpiry.compareTo(cached.ttl) < 0) {
+                    cached = new CachedTimeline(cached.timeline, untilExpiry);
+                    loaded.put(transaction.getLocationId(), cached);
+                }
+            }
+            cached.timeline.add(
+                    transaction.getStartDate(), checkoutOf(transaction.getStartDate(), transaction.getEndDate()), 1);
+        }
+        return loaded;
+    }
+    
+    /**
+     * Exclusive end of the nights a stay occupies: the check-out day is free again.
+     * A same-day stay occupies that one day.
+     */
+    static LocalDate checkoutOf(LocalDate startDate, LocalDate endDate) {
+        return endDate.isAfter(startDate) ? endDate : startDate.plusDays(1);
+    }
+    
+    /**
+     * Cached timeline and how long it stays valid: the default TTL, or less
+     * when a hold it counts expires sooner.
+     */
+    private static class CachedTimeline {
+        private final OccupancyTimeline timeline;
+        private final Duration ttl;
+        
+        CachedTimeline(OccupancyTimeline timeline, Duration ttl) {
+            this.timeline = timeline;
+            this.ttl = ttl;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.kheyma.service;
+
+import com.kheyma.model.JobLease;
+import com.kheyma.model.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Moves CONFIRMED bookings whose end date has passed to COMPLETED.
+ *
+ * Runs on whichever node holds the job's lease. Bookings are read in
+ * {@code (end_date, _id)} order over the {@code status_end_date_idx} index,
+ * a batch at a time, and updated with one unordered bulk write per batch.
+ * The position after each batch is saved with the lease renewal, so a run
+ * that stops half-way is resumed by the next holder.
+ *
+ * Availability is unaffected: timelines only load stays that have not ended.
+ */
+@Service
+public class BookingCompletionService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(BookingCompletionService.class);
+    
+    private static final String JOB = "complete-bookings";
+    private static final int BATCH_SIZE = 500;
+    private static final Duration LEASE = Duration.ofMinutes(5);
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    @Autowired
+    private JobLeaseService jobLeaseService;
+    
+    @Scheduled(cron = "${app.bookings.completion-cron:0 */15 * * * *}")
+    public void scheduledCompletion() {
+        completePastBookings();
+    }
+    
+    /**
+     * @return number of bookings completed by this node, or -1 if another node holds the job
+     */
+    public int completePastBookings() {
+        JobLease lease = jobLeaseService.tryAcquire(JOB, LEASE);
+        if (lease == null) {
+            return -1;
+        }
+        
+        long start = System.currentTimeMillis();
+        LocalDate today = LocalDate.now();
+        Checkpoint position = Checkpoint.parse(lease.getCheckpoint(), today);
+        int completed = 0;
+        
+        while (true) {
+            List<Transaction> batch = findBatch(today, position);
+            if (batch.isEmpty()) {
+                break;
+            }
+            completed += completeBatch(batch);
+            
+            Transaction last = batch.get(batch.size() - 1);
+            position = new Checkpoint(today, last.getEndDate(), last.getId());
+            if (!jobLeaseService.renew(JOB, LEASE, position.toString())) {
+                logger.warn("Lost the {} lease after {} bookings, stopping", JOB, completed);
+                return completed;
+            }
+        }
+        
+        jobLeaseService.release(JOB);
+        logger.info("Booking completion finished: {} bookings completed in {} ms",
+                completed, System.currentTimeMillis() - start);
+        return completed;
+    }
+    
+    private List<Transaction> findBatch(LocalDate today, Checkpoint position) {
+        Query query = new Query(Criteria.where("status").is(Transaction.TransactionStatus.CONFIRMED)
+                .and("endDate").lt(today));
+        if (position != null) {
+            query.addCriteria(new Criteria().orOperator(
+                    Criteria.where("endDate").gt(position.endDate),
+                    Criteria.where("endDate").is(position.endDate).and("id").gt(position.lastId)));
+        }
+        query.with(Sort.by("endDate", "id")).limit(BATCH_SIZE);
+        query.fields().include("id", "endDate");
+        return mongoTemplate.find(query, Transaction.class);
+    }
+    
+    private int completeBatch(List<Transaction> batch) {
+        LocalDateTime now = LocalDateTime.now();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Transaction.class);
+        for (Transaction transaction : batch) {
+            // Still conditional on CONFIRMED, in case the booking changed since it was read
+            bulk.updateOne(
+                    new Query(Criteria.where("id").is(transaction.getId())
+                            .and("status").is(Transaction.TransactionStatus.CONFIRMED)),
+                    new Update().set("status", Transaction.TransactionStatus.COMPLETED).set("updatedAt", now));
+        }
+        return bulk.execute().getModifiedCount();
+    }
+    
+    /**
+     * Last booking handled by a run, stored as {@code cutoff|endDate|id}. Only
+     * resumed by a run with the same cutoff day.
+     */
+    private static class Checkpoint {
+        private final LocalDate cutoff;
+        private final LocalDate endDate;
+        private final String lastId;
+        
+        Checkpoint(LocalDate cutoff, LocalDate endDate, String lastId) {
+            this.cutoff = cutoff;
+            this.endDate = endDate;
+            this.lastId = lastId;
+        }
+        
+        static Checkpoint parse(String value, LocalDate cutoff) {
+            if (value == null) {
+                return null;
+            }
+            String[] parts = value.split("\\|");
+            if (parts.length != 3 || !parts[0].equals(cutoff.toString())) {
+                return null;
+            }
+            return new Checkpoint(cutoff, LocalDate.parse(parts[1]), parts[2]);
+        }
+        
+        @Override
+        public String toString() {
+            return cutoff + "|" + endDate + "|" + lastId;
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package com.kheyma.service;
+
+import com.kheyma.dto.DailyStatsDto;
+import com.kheyma.dto.RevenueStatsDto;
+import com.kheyma.model.Location;
+import com.kheyma.model.LocationDailyStats;
+import com.kheyma.model.Transaction;
+import com.kheyma.repository.LocationRepository;
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Daily booking and revenue rollups per location ({@link LocationDailyStats}).
+ *
+ * Rollups are adjusted with one {@code $inc} upsert whenever a booking is
+ * created or cancelled, so a date range is summed from the rollups instead
+ * of a scan over transactions. A scheduled rebuild
+ * recomputes them from the transactions with a single aggregation to
+ * correct any drift (e.g. an update lost between two writes).
+ */
+@Service
+public class BookingStatsService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(BookingStatsService.class);
+    
+    private static final String REBUILD_JOB = "rebuild-booking-stats";
+    private static final Duration REBUILD_LEASE = Duration.ofMinutes(30);
+    private static final Duration REBUILD_RENEW_INTERVAL = REBUILD_LEASE.dividedBy(3);
+    private static final int MAX_RANGE_DAYS = 366;
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    @Autowired
+    private LocationRepository locationRepository;
+    
+    @Autowired
+    private JobLeaseService jobLeaseService;
+    
+    @Autowired
+    private TaskScheduler taskScheduler;
+    
+    /**
+     * Adds newly created bookings to their rollups. Failures are logged rather
+     * than thrown: the bookings are already written and the rebuild repairs
+     * the totals.
+     */
+    public void recordBookings(List<Transaction> transactions) {
+        try {
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, LocationDailyStats.class);
+            for (Transaction transaction : transactions) {
+                bulk.upsert(rollupOf(transaction), increments(transaction, 1));
+            }
+            bulk.execute();
+        } catch (RuntimeException e) {
+            logger.warn("Failed to add {} bookings to the daily stats", transactions.size(), e);
+        }
+    }
+    
+    /**
+     * Removes a cancelled booking from its rollup; must only be called for
+     * bookings that were counted (PENDING or CONFIRMED before cancelling).
+     */
+    public void recordCancellation(Transaction transaction) {
+        try {
+            mongoTemplate.upsert(rollupOf(transaction), increments(transaction, -1), LocationDailyStats.class);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to remove booking {} from the daily stats", transaction.getId(), e);
+        }
+    }
+    
+    /**
+     * Statistics of one location; only its owner or an admin may read them.
+     */
+    public RevenueStatsDto getLocationStats(String locationId, LocalDate from, LocalDate to,
+                                            String userId, boolean isAdmin) {
+        Location location = locationRepository.findById(locationId)
+                .orElseThrow(() -> new RuntimeException("Location not found"));
+        if (!isAdmin && !location.getOwnerId().equals(userId)) {
+            throw new RuntimeException("You don't have permission to view statistics of this location");
+        }
+        return getStats(locationId, from, to);
+    }
+    
+    /**
+     * Sums the rollups of {@code [from, to]} (both inclusive). Rollups are
+     * grouped by day on the server, so at most one row per day is read
+     * whether one location or all of them are summed.
+     *
+     * @param locationId one location, or null for all locations
+     */
+    public RevenueStatsDto getStats(String locationId, LocalDate from, LocalDate to) {
+        if (to.isBefore(from)) {
+            throw new RuntimeException("'to' must not be before 'from'");
+        }
+        if (ChronoUnit.DAYS.between(from, to) >= MAX_RANGE_DAYS) {
+            throw new RuntimeException("Statistics range cannot exceed " + MAX_RANGE_DAYS + " days");
+        }
+        
+        Criteria range = Criteria.where("date").gte(from).lte(to);
+        if (locationId != null) {
+            range.and("locationId").is(locationId);
+        }
+        
+        Decimal128 zero = new Decimal128(BigDecimal.ZERO);
+        Document group = new Document("_id", "$date")
+                .append("bookings", new Document("$sum", "$bookings"))
+                .append("nights", new Document("$sum", "$nights"))
+                .append("revenue", new Document("$sum", new Document("$ifNull", List.of("$revenue", zero))));
+        Document byPackage = new Document();
+        for (Transaction.PackageType packageType : Transaction.PackageType.values()) {
+            group.append("package_" + packageType, new Document("$sum", new Document("$ifNull",
+                    List.of("$revenue_by_package." + packageType.name(), zero))));
+            byPackage.append(packageType.name(), "$package_" + packageType);
+        }
+        Document byMethod = new Document();
+        for (Transaction.PaymentMethod method : Transaction.PaymentMethod.values()) {
+            group.append("method_" + method, new Document("$sum", new Document("$ifNull",
+                    List.of("$revenue_by_payment_method." + method.name(), zero))));
+            byMethod.append(method.name(), "$method_" + method);
+        }
+        // Same shape as a stored rollup, one per day and without an id
+        Document project = new Document("_id", 0)
+                .append("date", "$_id")
+                .append("bookings", 1)
+                .append("nights", 1)
+                .append("revenue", 1)
+                .append("revenue_by_package", byPackage)
+                .append("revenue_by_payment_method", byMethod);
+        
+        AggregationOperation groupStage = context -> new Document("$group", group);
+        AggregationOperation projectStage = context -> new Document("$project", project);
+        AggregationOperation sortStage = context -> new Document("$sort", new Document("date", 1));
+        Aggregation aggregation = Aggregation.newAggregation(LocationDailyStats.class,
+                Aggregation.match(range), groupStage, projectStage, sortStage);
+        
+        RevenueStatsDto stats = new RevenueStatsDto(locationId, from, to, 0, 0, BigDecimal.ZERO,
+                zeroTotals(Transaction.PackageType.values()), zeroTotals(Transaction.PaymentMethod.values()), null);
+        Map<LocalDate, DailyStatsDto> days = new TreeMap<>();
+        for (LocationDailyStats rollup : mongoTemplate.aggregate(aggregation, LocationDailyStats.class,
+                LocationDailyStats.class).getMappedResults()) {
+            BigDecimal revenue = rollup.getRevenue() != null ? rollup.getRevenue() : BigDecimal.ZERO;
+            DailyStatsDto day = days.computeIfAbsent(rollup.getDate(),
+                    date -> new DailyStatsDto(date, 0, 0, BigDecimal.ZERO));
+            day.setBookings(day.getBookings() + rollup.getBookings());
+            day.setNights(day.getNights() + rollup.getNights());
+            day.setRevenue(day.getRevenue().add(revenue));
+            
+            stats.setBookings(stats.getBookings() + rollup.getBookings());
+            stats.setNights(stats.getNights() + rollup.getNights());
+            stats.setRevenue(stats.getRevenue().add(revenue));
+            addAll(stats.getRevenueByPackage(), rollup.getRevenueByPackage());
+            addAll(stats.getRevenueByPaymentMethod(), rollup.getRevenueByPaymentMethod());
+        }
+        stats.setDays(new ArrayList<>(days.values()));
+        return stats;
+    }
+    
+    @Scheduled(cron = "${app.stats.rebuild-cron:0 30 3 * * *}")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+    
+    /**
+     * Recreates every rollup from the transactions with one aggregation that
+     * replaces the collection ({@code $out}). Bookings written while it runs
+     * may be missed until the next rebuild: their {@code $inc} lands in the
+     * collection being replaced and is lost with it, and the aggregation may
+     * have read the transactions before they were written.
+     *
+     * The lease is renewed while the aggregation runs, so a slow rebuild is
+     * never joined by a competing {@code $out} from another node.
+     *
+     * @return number of rollups written, or -1 if another node is rebuilding
+     */
+    public long rebuild() {
+        if (jobLeaseService.tryAcquire(REBUILD_JOB, REBUILD_LEASE) == null) {
+            return -1;
+        }
+        ScheduledFuture<?> renewal = taskScheduler.scheduleAtFixedRate(() -> {
+            if (!jobLeaseService.renew(REBUILD_JOB, REBUILD_LEASE, null)) {
+                logger.warn("Lost the {} lease while the rebuild is still running", REBUILD_JOB);
+            }
+        }, Instant.now().plus(REBUILD_RENEW_INTERVAL), REBUILD_RENEW_INTERVAL);
+        try {
+            long start = System.currentTimeMillis();
+            // Dates are stored as the start of the local day, so the grouping uses the same zone
+            String zone = TimeZone.getDefault().getID();
+            Document amount = new Document("$toDecimal", "$amount");
+            
+            Document group = new Document("_id", new Document("location_id", "$location_id")
+                    .append("date", new Document("$dateTrunc", new Document("date", "$created_at")
+                            .append("unit", "day").append("timezone", zone))))
+                    .append("bookings", new Document("$sum", 1))
+                    .append("nights", new Document("$sum", new Document("$max", List.of(1,
+                            new Document("$dateDiff", new Document("startDate", "$start_date")
+                                    .append("endDate", "$end_date").append("unit", "day").append("timezone", zone))))))
+                    .append("revenue", new Document("$sum", amount));
+            Document byPackage = new Document();
+            for (Transaction.PackageType packageType : Transaction.PackageType.values()) {
+                group.append("package_" + packageType, sumIf("$package_type", packageType.name(), amount));
+                byPackage.append(packageType.name(), "$package_" + packageType);
+            }
+            Document byMethod = new Document();
+            for (Transaction.PaymentMethod method : Transaction.PaymentMethod.values()) {
+                group.append("method_" + method, sumIf("$payment_method", method.name(), amount));
+                byMethod.append(method.name(), "$method_" + method);
+            }
+            
+            Document project = new Document("_id", new Document("$concat", List.of("$_id.location_id", ":",
+                    new Document("$dateToString", new Document("date", "$_id.date")
+                            .append("format", "%Y-%m-%d").append("timezone", zone)))))
+                    .append("location_id", "$_id.location_id")
+                    .append("date", "$_id.date")
+                    .append("bookings", 1)
+                    .append("nights", 1)
+                    .append("revenue", 1)
+                    .append("revenue_by_package", byPackage)
+                    .append("revenue_by_payment_method", byMethod);
+            
+            AggregationOperation match = context -> new Document("$match", new Document("status",
+                    new Document("$nin", List.of(Transaction.TransactionStatus.CANCELLED.name(),
+                            Transaction.TransactionStatus.REFUNDED.name()))));
+            AggregationOperation groupStage = context -> new Document("$group", group);
+            AggregationOperation projectStage = context -> new Document("$project", project);
+            AggregationOperation out = context -> new Document("$out",
+                    mongoTemplate.getCollectionName(LocationDailyStats.class));
+            mongoTemplate.aggregate(Aggregation.newAggregation(match, groupStage, projectStage, out),
+                    Transaction.class, Document.class);
+            
+            long rollups = mongoTemplate.estimatedCount(LocationDailyStats.class);
+            logger.info("Booking stats rebuilt: {} daily rollups in {} ms",
+                    rollups, System.currentTimeMillis() - start);
+            return rollups;
+        } finally {
+            renewal.cancel(false);
+            jobLeaseService.release(REBUILD_JOB);
+        }
+    }
+    
+    private static Query rollupOf(Transaction transaction) {
+        return new Query(Criteria.where("id").is(
+                LocationDailyStats.idOf(transaction.getLocationId(), transaction.getCreatedAt().toLocalDate())));
+    }
+    
+    private static Update increments(Transaction transaction, int sign) {
+        BigDecimal amount = transaction.getAmount() != null ? transaction.getAmount() : BigDecimal.ZERO;
+        Decimal128 revenue = new Decimal128(sign > 0 ? amount : amount.negate());
+        long nights = ChronoUnit.DAYS.between(transaction.getStartDate(),
+                AvailabilityService.checkoutOf(transaction.getStartDate(), transaction.getEndDate()));
+        
+        Update update = new Update()
+                .setOnInsert("locationId", transaction.getLocationId())
+                .setOnInsert("date", transaction.getCreatedAt().toLocalDate())
+                .inc("bookings", sign)
+                .inc("nights", sign * nights)
+                .inc("revenue", revenue);
+        if (transaction.getPackageType() != null) {
+            update.inc("revenueByPackage." + transaction.getPackageType().name(), revenue);
+        }
+        if (transaction.getPaymentMethod() != null) {
+            update.inc("revenueByPaymentMethod." + transaction.getPaymentMethod().name(), revenue);
+        }
+        return update;
+    }
+    
+    private static Document sumIf(String field, String value, Document amount) {
+        return new Document("$sum", new Document("$cond", List.of(
+                new Document("$eq", List.of(field, value)), amount, new Decimal128(BigDecimal.ZERO))));
+    }
+    
+    private static Map<String, BigDecimal> zeroTotals(Enum<?>[] keys) {
+        Map<String, BigDecimal> totals = new TreeMap<>();
+        for (Enum<?> key : keys) {
+            totals.put(key.name(), BigDecimal.ZERO);
+        }
+        return totals;
+    }
+    
+    private static void addAll(Map<String, BigDecimal> totals, Map<String, BigDecimal> amounts) {
+        if (amounts != null) {
+            amounts.forEach((key, value) -> totals.merge(key, value, BigDecimal::add));
+        }
+    }
+}
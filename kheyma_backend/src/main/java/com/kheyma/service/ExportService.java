@@ -0,0 +1,303 @@
+package com.kheyma.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kheyma.model.Review;
+import com.kheyma.model.Transaction;
+import com.kheyma.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes whole collections as CSV or NDJSON, one document at a time.
+ *
+ * Documents are read from a single Mongo cursor in {@code _id} order and
+ * written straight to the output, so memory use depends on the cursor batch
+ * size and not on the number of rows.
+ */
+@Service
+public class ExportService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ExportService.class);
+    
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final int MAX_BATCH_SIZE = 10_000;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final String FORMULA_PREFIXES = "=+-@\t\r";
+    
+    public enum Dataset {
+        TRANSACTIONS,
+        USERS,
+        REVIEWS
+    }
+    
+    public enum Format {
+        CSV("text/csv", "csv"),
+        NDJSON("application/x-ndjson", "ndjson");
+        
+        private final String contentType;
+        private final String extension;
+        
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+        
+        public String getContentType() {
+            return contentType;
+        }
+        
+        public String getExtension() {
+            return extension;
+        }
+    }
+    
+    /**
+     * Which documents to export; every field is optional.
+     */
+    public static class ExportFilter {
+        private final LocalDate from;
+        private final LocalDate to;
+        private final String locationId;
+        private final Transaction.TransactionStatus status;
+        
+        public ExportFilter(LocalDate from, LocalDate to, String locationId, Transaction.TransactionStatus status) {
+            this.from = from;
+            this.to = to;
+            this.locationId = locationId;
+            this.status = status;
+        }
+    }
+    
+    private static final List<Column<Transaction>> TRANSACTION_COLUMNS = List.of(
+            new Column<>("id", Transaction::getId),
+            new Column<>("locationId", Transaction::getLocationId),
+            new Column<>("userId", Transaction::getUserId),
+            new Column<>("packageType", Transaction::getPackageType),
+            new Column<>("amount", Transaction::getAmount),
+            new Column<>("startDate", Transaction::getStartDate),
+            new Column<>("endDate", Transaction::getEndDate),
+            new Column<>("paymentMethod", Transaction::getPaymentMethod),
+            new Column<>("status", Transaction::getStatus),
+            new Column<>("paymentId", Transaction::getPaymentId),
+            new Column<>("createdAt", Transaction::getCreatedAt),
+            new Column<>("updatedAt", Transaction::getUpdatedAt));
+    
+    // The password hash is never read, let alone exported
+    private static final List<Column<User>> USER_COLUMNS = List.of(
+            new Column<>("id", User::getId),
+            new Column<>("email", User::getEmail),
+            new Column<>("name", User::getName),
+            new Column<>("age", User::getAge),
+            new Column<>("phoneNumber", User::getPhoneNumber),
+            new Column<>("roles", User::getRoles),
+            new Column<>("active", User::isActive),
+            new Column<>("createdAt", User::getCreatedAt),
+            new Column<>("updatedAt", User::getUpdatedAt));
+    
+    private static final List<Column<Review>> REVIEW_COLUMNS = List.of(
+            new Column<>("id", Review::getId),
+            new Column<>("locationId", Review::getLocationId),
+            new Column<>("userId", Review::getUserId),
+            new Column<>("userName", Review::getUserName),
+            new Column<>("rating", Review::getRating),
+            new Column<>("comment", Review::getComment),
+            new Column<>("createdAt", Review::getCreatedAt),
+            new Column<>("updatedAt", Review::getUpdatedAt));
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    /**
+     * Writes every matching document of {@code dataset} to {@code out}. The
+     * stream is finished (and the gzip trailer written) but not closed.
+     *
+     * @param batchSize documents fetched per cursor round trip
+     * @return number of rows written
+     */
+    public long export(Dataset dataset, Format format, ExportFilter filter, int batchSize,
+                       boolean gzip, OutputStream out) throws IOException {
+        if (batchSize < 1 || batchSize > MAX_BATCH_SIZE) {
+            throw new RuntimeException("Batch size must be between 1 and " + MAX_BATCH_SIZE);
+        }
+        long start = System.currentTimeMillis();
+        GZIPOutputStream compressed = gzip ? new GZIPOutputStream(out, WRITE_BUFFER_SIZE) : null;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(
+                compressed != null ? compressed : out, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+        
+        long rows = switch (dataset) {
+            case TRANSACTIONS ->
+                    write(transactionQuery(filter), Transaction.class, TRANSACTION_COLUMNS, format, batchSize, writer);
+            case USERS -> write(userQuery(filter), User.class, USER_COLUMNS, format, batchSize, writer);
+            case REVIEWS -> write(reviewQuery(filter), Review.class, REVIEW_COLUMNS, format, batchSize, writer);
+        };
+        
+        writer.flush();
+        if (compressed != null) {
+            compressed.finish();
+        }
+        logger.info("Exported {} {} rows as {} in {} ms",
+                rows, dataset, format, System.currentTimeMillis() - start);
+        return rows;
+    }
+    
+    private <T> long write(Query query, Class<T> type, List<Column<T>> columns, Format format,
+                           int batchSize, Writer writer) throws IOException {
+        // Index-backed order, so the cursor needs no in-memory sort
+        query.with(Sort.by("id")).cursorBatchSize(batchSize);
+        query.fields().include(columns.stream().map(Column::getName).toArray(String[]::new));
+        
+        JsonGenerator json = null;
+        if (format == Format.CSV) {
+            writeCsvRow(writer, columns.stream().map(Column::getName).collect(Collectors.toList()));
+        } else {
+            json = objectMapper.createGenerator(writer);
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        }
+        
+        long rows = 0;
+        try (Stream<T> documents = mongoTemplate.stream(query, type)) {
+            for (T document : (Iterable<T>) documents::iterator) {
+                if (format == Format.CSV) {
+                    writeCsvRow(writer, columns.stream()
+                            .map(column -> column.getValue(document))
+                            .collect(Collectors.toList()));
+                } else {
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    for (Column<T> column : columns) {
+                        row.put(column.getName(), column.getValue(document));
+                    }
+                    json.writeObject(row);
+                    json.flush();
+                    writer.write('\n');
+                }
+                rows++;
+            }
+        }
+        return rows;
+    }
+    
+    private static Query transactionQuery(ExportFilter filter) {
+        Query query = createdBetween(filter);
+        if (filter.locationId != null) {
+            query.addCriteria(Criteria.where("locationId").is(filter.locationId));
+        }
+        if (filter.status != null) {
+            query.addCriteria(Criteria.where("status").is(filter.status));
+        }
+        return query;
+    }
+    
+    private static Query userQuery(ExportFilter filter) {
+        return createdBetween(filter);
+    }
+    
+    private static Query reviewQuery(ExportFilter filter) {
+        Query query = createdBetween(filter);
+        if (filter.locationId != null) {
+            query.addCriteria(Criteria.where("locationId").is(filter.locationId));
+        }
+        return query;
+    }
+    
+    private static Query createdBetween(ExportFilter filter) {
+        Query query = new Query();
+        if (filter.from != null || filter.to != null) {
+            Criteria createdAt = Criteria.where("createdAt");
+            if (filter.from != null) {
+                createdAt.gte(filter.from.atStartOfDay());
+            }
+            if (filter.to != null) {
+                createdAt.lt(filter.to.plusDays(1).atStartOfDay());
+            }
+            query.addCriteria(createdAt);
+        }
+        return query;
+    }
+    
+    private static void writeCsvRow(Writer writer, List<?> values) throws IOException {
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writeCsvValue(writer, values.get(i));
+        }
+        writer.write("\r\n");
+    }
+    
+    private static void writeCsvValue(Writer writer, Object value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        String text;
+        if (value instanceof BigDecimal) {
+            text = ((BigDecimal) value).toPlainString();
+        } else if (value instanceof Collection) {
+            text = ((Collection<?>) value).stream().map(String::valueOf).sorted().collect(Collectors.joining(";"));
+        } else {
+            text = value.toString();
+        }
+        
+        // Spreadsheets evaluate cells starting with these as formulas; user-entered
+        // text (names, comments) is neutralized with a leading quote. Numbers are
+        // written as they are, so negative amounts stay numeric
+        boolean formula = !(value instanceof Number) && !text.isEmpty()
+                && FORMULA_PREFIXES.indexOf(text.charAt(0)) >= 0;
+        if (formula) {
+            text = "'" + text;
+        }
+        
+        // RFC 4180: quote fields holding a separator, quote or line break
+        if (!formula && text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            writer.write(text);
+            return;
+        }
+        writer.write('"');
+        writer.write(text.replace("\"", "\"\""));
+        writer.write('"');
+    }
+    
+    private static class Column<T> {
+        private final String name;
+        private final Function<T, Object> value;
+        
+        Column(String name, Function<T, Object> value) {
+            this.name = name;
+            this.value = value;
+        }
+        
+        String getName() {
+            return name;
+        }
+        
+        Object getValue(T document) {
+            return value.apply(document);
+        }
+    }
+}
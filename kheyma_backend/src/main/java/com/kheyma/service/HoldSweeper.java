@@ -0,0 +1,38 @@
+package com.kheyma.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Cancels PENDING bookings whose hold expired and gives their nights back.
+ * 
+ * Availability already ignores expired holds; this makes the cancellation
+ * durable and frees the night inventory. Each hold is cancelled with a
+ * conditional status transition, so sweeps running on several nodes at once
+ * never release the same nights twice.
+ */
+@Service
+public class HoldSweeper {
+    
+    private static final Logger logger = LoggerFactory.getLogger(HoldSweeper.class);
+    
+    @Autowired
+    private TransactionService transactionService;
+    
+    @Scheduled(fixedDelayString = "${app.payments.hold-sweep-interval-ms:60000}")
+    public void sweepExpiredHolds() {
+        int total = 0;
+        int expired;
+        do {
+            expired = transactionService.expireHolds(null, TransactionService.HOLD_SWEEP_BATCH);
+            total += expired;
+        } while (expired > 0);
+        
+        if (total > 0) {
+            logger.info("Expired {} unpaid booking holds", total);
+        }
+    }
+}
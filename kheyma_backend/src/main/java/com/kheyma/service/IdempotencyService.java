@@ -0,0 +1,236 @@
+package com.kheyma.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.kheyma.exception.ConflictException;
+import com.kheyma.model.IdempotencyRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Runs a request at most once per {@code Idempotency-Key} and replays its
+ * response to retries.
+ *
+ * Completed responses are kept in a bounded in-process cache in front of the
+ * {@link IdempotencyRecord} collection, which is what makes retries that land
+ * on another node safe. Concurrent duplicates on the same node wait for the
+ * first one instead of failing; a duplicate on another node while the first
+ * is still running gets a 409.
+ */
+@Service
+public class IdempotencyService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyService.class);
+    
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final int LOCAL_CACHE_SIZE = 10_000;
+    // Same lifetime as the TTL index on IdempotencyRecord
+    private static final Duration RETENTION = Duration.ofHours(24);
+    // A record still running after this long belongs to a request that died
+    private static final Duration IN_PROGRESS_TIMEOUT = Duration.ofMinutes(1);
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    private final Cache<String, IdempotencyRecord> completed = Caffeine.newBuilder()
+            .maximumSize(LOCAL_CACHE_SIZE)
+            .expireAfterWrite(RETENTION)
+            .build();
+    
+    private final ConcurrentMap<String, CompletableFuture<IdempotencyRecord>> inFlight = new ConcurrentHashMap<>();
+    
+    /**
+     * Returns the stored response for {@code key} if the request already ran,
+     * otherwise runs {@code action} and stores what it returned.
+     *
+     * @param request the request body, compared against the one first sent with the key
+     * @throws ConflictException if the key is in use by a running or different request
+     */
+    public ResponseEntity<?> execute(String userId, String key, Object request, Supplier<ResponseEntity<?>> action) {
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new RuntimeException("Idempotency-Key must be 1 to " + MAX_KEY_LENGTH + " characters");
+        }
+        String id = IdempotencyRecord.idOf(userId, key);
+        String requestHash = hash(request);
+        
+        IdempotencyRecord cached = completed.getIfPresent(id);
+        if (cached != null) {
+            return replay(cached, requestHash);
+        }
+        
+        CompletableFuture<IdempotencyRecord> mine = new CompletableFuture<>();
+        CompletableFuture<IdempotencyRecord> running = inFlight.putIfAbsent(id, mine);
+        if (running != null) {
+            return replay(await(running), requestHash);
+        }
+        
+        try {
+            IdempotencyRecord existing = claim(id, requestHash);
+            if (existing != null) {
+                completed.put(id, existing);
+                mine.complete(existing);
+                return replay(existing, requestHash);
+            }
+            
+            ResponseEntity<?> response;
+            try {
+                response = action.get();
+            } catch (RuntimeException e) {
+                // Nothing was stored, so a retry may run again
+                mongoTemplate.remove(new Query(Criteria.where("id").is(id).and("completed").is(false)),
+                        IdempotencyRecord.class);
+                throw e;
+            }
+            
+            IdempotencyRecord record;
+            try {
+                record = store(id, requestHash, response);
+            } catch (RuntimeException e) {
+                // The request has run: the key must not be left in progress, where a
+                // retry would take it over and run the request a second time
+                record = markCompleted(id, requestHash, response, e);
+            }
+            completed.put(id, record);
+            mine.complete(record);
+            return response;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(id, mine);
+        }
+    }
+    
+    /**
+     * Inserts the in-progress record for {@code id}, or takes over one left by a
+     * request that died.
+     *
+     * @return the completed record if the request already ran, or null if the caller now owns the key
+     * @throws ConflictException if another node is running the request right now
+     */
+    private IdempotencyRecord claim(String id, String requestHash) {
+        try {
+            mongoTemplate.insert(new IdempotencyRecord(id, requestHash, false, 0, null, LocalDateTime.now()));
+            return null;
+        } catch (DuplicateKeyException e) {
+            IdempotencyRecord existing = mongoTemplate.findById(id, IdempotencyRecord.class);
+            if (existing == null) {
+                // Removed by a failed first attempt in the meantime
+                return claim(id, requestHash);
+            }
+            if (existing.isCompleted()) {
+                return existing;
+            }
+            
+            IdempotencyRecord abandoned = mongoTemplate.findAndModify(
+                    new Query(Criteria.where("id").is(id).and("completed").is(false)
+                            .and("createdAt").lt(LocalDateTime.now().minus(IN_PROGRESS_TIMEOUT))),
+                    new Update().set("requestHash", requestHash).set("createdAt", LocalDateTime.now()),
+                    FindAndModifyOptions.options().returnNew(true),
+                    IdempotencyRecord.class);
+            if (abandoned == null) {
+                throw new ConflictException("A request with this Idempotency-Key is already in progress");
+            }
+            return null;
+        }
+    }
+    
+    private IdempotencyRecord store(String id, String requestHash, ResponseEntity<?> response) {
+        String body;
+        try {
+            body = response.getBody() != null ? objectMapper.writeValueAsString(response.getBody()) : null;
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to store idempotent response", e);
+        }
+        IdempotencyRecord record = new IdempotencyRecord(
+                id, requestHash, true, response.getStatusCode().value(), body, LocalDateTime.now());
+        mongoTemplate.save(record);
+        return record;
+    }
+    
+    /**
+     * Fallback when the full response could not be stored: completes the
+     * record with the status code only, so retries replay the status without
+     * a body instead of running again. If even that write fails the record
+     * is only completed on this node and is logged for follow-up.
+     */
+    private IdempotencyRecord markCompleted(String id, String requestHash, ResponseEntity<?> response,
+                                            RuntimeException cause) {
+        IdempotencyRecord record = new IdempotencyRecord(
+                id, requestHash, true, response.getStatusCode().value(), null, LocalDateTime.now());
+        try {
+            mongoTemplate.updateFirst(new Query(Criteria.where("id").is(id)), new Update()
+                    .set("completed", true)
+                    .set("statusCode", record.getStatusCode())
+                    .unset("body"), IdempotencyRecord.class);
+            logger.warn("Stored idempotent response {} without its body", id, cause);
+        } catch (RuntimeException e) {
+            logger.error("Idempotency key {} ran but could not be marked completed", id, e);
+        }
+        return record;
+    }
+    
+    private ResponseEntity<?> replay(IdempotencyRecord record, String requestHash) {
+        if (!record.getRequestHash().equals(requestHash)) {
+            throw new ConflictException("Idempotency-Key was already used for a different request");
+        }
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(record.getStatusCode())
+                .header(REPLAYED_HEADER, "true");
+        if (record.getBody() == null) {
+            return builder.build();
+        }
+        return builder.contentType(MediaType.APPLICATION_JSON).body(record.getBody());
+    }
+    
+    private IdempotencyRecord await(CompletableFuture<IdempotencyRecord> running) {
+        try {
+            return running.get(IN_PROGRESS_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConflictException("A request with this Idempotency-Key is already in progress");
+        } catch (ExecutionException | TimeoutException e) {
+            throw new ConflictException("A request with this Idempotency-Key is already in progress");
+        }
+    }
+    
+    private String hash(Object request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(
+                    objectMapper.writeValueAsString(request).getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException | JsonProcessingException e) {
+            throw new RuntimeException("Failed to hash request", e);
+        }
+    }
+}
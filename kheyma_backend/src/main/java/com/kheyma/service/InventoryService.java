@@ -0,0 +1,105 @@
+package com.kheyma.service;
+
+import com.kheyma.model.Location;
+import com.kheyma.model.LocationNight;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Atomic reservation of location nights.
+ * 
+ * Each night is a {@link LocationNight} document claimed with a conditional
+ * {@code $inc} that only matches while the night is below the location's
+ * ticket capacity, so the tickets left never drop below zero. There is
+ * no lock: contention is resolved per night document by MongoDB, so bookings
+ * of different locations or dates never wait on each other, and the scheme
+ * is safe across several application nodes.
+ */
+@Service
+public class InventoryService {
+    
+    private static final int DEFAULT_CAPACITY = 1;
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    /**
+     * Claims every night of {@code [startDate, checkout)} or none of them.
+     *
+     * @throws RuntimeException if any night is already full
+     */
+    public void reserve(String locationId, LocalDate startDate, LocalDate endDate) {
+        int capacity = capacityOf(locationId);
+        List<LocalDate> claimed = new ArrayList<>();
+        LocalDate checkout = AvailabilityService.checkoutOf(startDate, endDate);
+        
+        for (LocalDate night = startDate; night.isBefore(checkout); night = night.plusDays(1)) {
+            if (!claimNight(locationId, night, capacity)) {
+                // Compensate: give back the nights taken so far
+                claimed.forEach(taken -> releaseNight(locationId, taken));
+                throw new RuntimeException("Location is not available for the selected dates");
+            }
+            claimed.add(night);
+        }
+    }
+    
+    public void release(String locationId, LocalDate startDate, LocalDate endDate) {
+        LocalDate checkout = AvailabilityService.checkoutOf(startDate, endDate);
+        for (LocalDate night = startDate; night.isBefore(checkout); night = night.plusDays(1)) {
+            releaseNight(locationId, night);
+        }
+    }
+    
+    /**
+     * Tickets a location sells per day; locations saved before capacities
+     * existed sell one.
+     */
+    public static int capacityOf(Location location) {
+        return location.getTicketCapacity() != null ? location.getTicketCapacity() : DEFAULT_CAPACITY;
+    }
+    
+    int capacityOf(String locationId) {
+        Query query = new Query(Criteria.where("id").is(locationId));
+        query.fields().include("ticketCapacity");
+        Location location = mongoTemplate.findOne(query, Location.class);
+        if (location == null) {
+            throw new RuntimeException("Location not found");
+        }
+        return capacityOf(location);
+    }
+    
+    private boolean claimNight(String locationId, LocalDate night, int capacity) {
+        if (capacity <= 0) {
+            return false;
+        }
+        Query belowCapacity = new Query(Criteria.where("id").is(LocationNight.idOf(locationId, night))
+                .and("reserved").lt(capacity));
+        Update claim = new Update().inc("reserved", 1)
+                .setOnInsert("locationId", locationId)
+                .setOnInsert("date", night);
+        try {
+            mongoTemplate.upsert(belowCapacity, claim, LocationNight.class);
+            return true;
+        } catch (DuplicateKeyException e) {
+            // The night exists and did not match: either full, or created concurrently
+            // by another booker; a plain conditional update tells the two apart
+            return mongoTemplate.updateFirst(belowCapacity, claim, LocationNight.class).getModifiedCount() == 1;
+        }
+    }
+    
+    private void releaseNight(String locationId, LocalDate night) {
+        mongoTemplate.updateFirst(
+                new Query(Criteria.where("id").is(LocationNight.idOf(locationId, night)).and("reserved").gt(0)),
+                new Update().inc("reserved", -1),
+                LocationNight.class);
+    }
+}
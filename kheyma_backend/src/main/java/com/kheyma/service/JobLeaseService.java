@@ -0,0 +1,78 @@
+package com.kheyma.service;
+
+import com.kheyma.model.JobLease;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Leader election for scheduled jobs that must run on one node at a time.
+ *
+ * A node holds a job while its {@link JobLease} has not expired, and must
+ * renew it before that; a node that dies simply stops renewing and another
+ * one takes over. Acquiring and renewing are single conditional upserts.
+ */
+@Service
+public class JobLeaseService {
+    
+    // Identifies this process as a lease owner
+    private final String nodeId = UUID.randomUUID().toString();
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    /**
+     * Takes the lease if it is free, expired or already ours, and extends it
+     * by {@code duration}.
+     *
+     * @return the lease (with the job's checkpoint), or null if another node holds it
+     */
+    public JobLease tryAcquire(String job, Duration duration) {
+        LocalDateTime now = LocalDateTime.now();
+        Query available = new Query(Criteria.where("id").is(job).orOperator(
+                Criteria.where("leaseUntil").lt(now),
+                Criteria.where("owner").is(nodeId)));
+        try {
+            return mongoTemplate.findAndModify(available,
+                    new Update().set("owner", nodeId).set("leaseUntil", now.plus(duration)).set("updatedAt", now),
+                    FindAndModifyOptions.options().upsert(true).returnNew(true),
+                    JobLease.class);
+        } catch (DuplicateKeyException e) {
+            // The lease exists and is held by another node
+            return null;
+        }
+    }
+    
+    /**
+     * Extends a lease this node holds and records the job's progress.
+     *
+     * @return false if the lease was lost, in which case the job must stop
+     */
+    public boolean renew(String job, Duration duration, String checkpoint) {
+        LocalDateTime now = LocalDateTime.now();
+        return mongoTemplate.updateFirst(
+                new Query(Criteria.where("id").is(job).and("owner").is(nodeId)),
+                new Update().set("leaseUntil", now.plus(duration)).set("checkpoint", checkpoint).set("updatedAt", now),
+                JobLease.class).getMatchedCount() == 1;
+    }
+    
+    /**
+     * Ends the run: clears the checkpoint and frees the lease for the next run.
+     */
+    public void release(String job) {
+        LocalDateTime now = LocalDateTime.now();
+        mongoTemplate.updateFirst(
+                new Query(Criteria.where("id").is(job).and("owner").is(nodeId)),
+                new Update().set("leaseUntil", now).unset("checkpoint").set("updatedAt", now),
+                JobLease.class);
+    }
+}
@@ -1,21 +1,39 @@
 package com.kheyma.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.kheyma.aop.annotation.Loggable;
 import com.kheyma.aop.annotation.PerformanceMonitor;
 import com.kheyma.dto.*;
 import com.kheyma.model.Location;
+import com.kheyma.repository.ContentVersion;
+import com.kheyma.repository.LocationFacetResult;
 import com.kheyma.repository.LocationRepository;
-import com.kheyma.repository.ReviewRepository;
+import com.kheyma.repository.LocationSearchCriteria;
+import com.kheyma.util.CursorCodec;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.geo.GeoResult;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -23,13 +41,56 @@ import java.util.stream.Collectors;
 @PerformanceMonitor(threshold = 2000)
 public class LocationService {
     
+    private static final int FACET_CACHE_SIZE = 1_000;
+    private static final Duration FACET_CACHE_TTL = Duration.ofSeconds(30);
+    
     @Autowired
     private LocationRepository locationRepository;
     
     @Autowired
-    private ReviewRepository reviewRepository;
+    private LocationSuggestionService suggestionService;
+    
+    @Autowired
+    private AvailabilityService availabilityService;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${app.cache.location.max-weight:10000}")
+    private long locationCacheMaxWeight;
+    
+    @Value("${app.cache.location.ttl:10m}")
+    private Duration locationCacheTtl;
+    
+    private final Cache<LocationSearchCriteria, LocationFacets> facetCache = Caffeine.newBuilder()
+            .maximumSize(FACET_CACHE_SIZE)
+            .expireAfterWrite(FACET_CACHE_TTL)
+            .recordStats()
+            .build();
+    
+    // Read-through cache for location detail views, invalidated on every write to a location
+    private Cache<String, LocationDto> locationCache;
+    
+    @PostConstruct
+    public void initCaches() {
+        locationCache = Caffeine.newBuilder()
+                .maximumWeight(locationCacheMaxWeight)
+                .weigher((String id, LocationDto dto) -> weighOf(dto))
+                .expireAfterWrite(locationCacheTtl)
+                .recordStats()
+                .build();
+        
+        // Exposes hit/miss/eviction counters under /actuator/metrics/cache.*
+        CaffeineCacheMetrics.monitor(meterRegistry, locationCache, "locations");
+        CaffeineCacheMetrics.monitor(meterRegistry, facetCache, "location-facets");
+    }
     
-    public PageResponse<LocationDto> getAllPublicLocations(int page, int size, String sortBy, String sortDir) {
+    public PageResponse<LocationDto> getAllPublicLocations(int page, int size, String sortBy, String sortDir,
+                                                           String after) {
+        if (after != null) {
+            return getPublicLocationsAfter(after, size, sortBy, sortDir);
+        }
+        
         Sort sort = sortDir.equalsIgnoreCase("desc") ? Sort.by(sortBy).descending() : Sort.by(sortBy).ascending();
         Pageable pageable = PageRequest.of(page, size, sort);
         Page<Location> locations = locationRepository.findAll(pageable);
@@ -37,47 +98,206 @@ public class LocationService {
         return convertToPageResponse(locations);
     }
     
+    /**
+     * Cursor mode of {@link #getAllPublicLocations}: seeks on {@code (sortBy, _id)}
+     * and skips the total count. An empty cursor starts from the first page.
+     */
+    private PageResponse<LocationDto> getPublicLocationsAfter(String after, int size, String sortBy, String sortDir) {
+        KeysetField field = KeysetField.of(sortBy);
+        Sort.Direction direction = sortDir.equalsIgnoreCase("desc") ? Sort.Direction.DESC : Sort.Direction.ASC;
+        
+        Object lastValue = null;
+        String lastId = null;
+        if (!after.isEmpty()) {
+            List<String> parts = CursorCodec.decode(after, 4);
+            if (!parts.get(0).equals(field.property) || !parts.get(1).equals(direction.name())) {
+                throw new RuntimeException("Cursor does not match the requested sort");
+            }
+            lastValue = field.parse(parts.get(2));
+            lastId = parts.get(3);
+        }
+        
+        // Fetch one extra row to find out whether another page exists
+        List<Location> locations = locationRepository.findPageAfter(field.property, direction, lastValue, lastId, size + 1);
+        boolean hasNext = locations.size() > size;
+        if (hasNext) {
+            locations = locations.subList(0, size);
+        }
+        
+        String nextCursor = null;
+        if (hasNext) {
+            Location last = locations.get(locations.size() - 1);
+            nextCursor = CursorCodec.encode(List.of(
+                    field.property, direction.name(), field.format(last), last.getId()));
+        }
+        
+        return PageResponse.ofCursor(convertToDtos(locations), size, lastId == null, nextCursor);
+    }
+    
+    /**
+     * Version of a location's representation, or null if it does not exist.
+     * Served from the detail cache when possible, otherwise by a projection
+     * that reads only {@code updated_at}.
+     * 
+     * Reservations touch {@code updated_at}; the version is also never older
+     * than the start of today, since {@code ticketAvailable} is for today.
+     */
+    public LocalDateTime getLocationVersion(String id) {
+        LocationDto cached = locationCache.getIfPresent(id);
+        LocalDateTime updatedAt = cached != null
+                ? cached.getUpdatedAt()
+                : locationRepository.findUpdatedAtById(id).orElse(null);
+        if (updatedAt == null) {
+            return null;
+        }
+        LocalDateTime today = LocalDate.now().atStartOfDay();
+        return updatedAt.isBefore(today) ? today : updatedAt;
+    }
+    
+    public ContentVersion getLocationsVersion() {
+        return locationRepository.findVersion();
+    }
+    
     public LocationDto getLocationById(String id) {
-        Location location = locationRepository.findById(id)
-                .orElseThrow(() -> new RuntimeException("Location not found"));
-        return convertToDto(location);
+        return locationCache.get(id, key -> {
+            Location location = locationRepository.findById(key)
+                    .orElseThrow(() -> new RuntimeException("Location not found"));
+            return convertToDto(location);
+        });
+    }
+    
+    public List<LocationSuggestionDto> suggestLocations(String prefix, int limit) {
+        return suggestionService.suggest(prefix, limit);
     }
     
     public PageResponse<LocationDto> searchLocations(String query, Double lat, Double lng, Double radius,
                                                      List<String> tags, Double minPrice, Double maxPrice,
-                                                     Integer rating, int page, int size) {
+                                                     Integer rating, Location.LocationType locationType,
+                                                     LocalDate checkIn, LocalDate checkOut,
+                                                     String after, int page, int size) {
+        LocationSearchCriteria criteria = toCriteria(query, tags, minPrice, maxPrice, rating, locationType);
+        criteria.setLatitude(lat);
+        criteria.setLongitude(lng);
+        criteria.setRadiusKm(radius);
+        
+        if (checkIn != null || checkOut != null) {
+            setStay(criteria, checkIn, checkOut);
+        }
+        
+        if (criteria.isNearSearch()) {
+            return searchNear(criteria, after, size);
+        }
+        
+        // All filters are evaluated by Mongo so paging and totals stay consistent
         Pageable pageable = PageRequest.of(page, size);
-        Page<Location> locations;
-        
-        if (query != null && !query.isEmpty()) {
-            locations = locationRepository.search(query, pageable);
-        } else {
-            locations = locationRepository.findAll(pageable);
-        }
-        
-        // Apply additional filters
-        List<Location> filtered = locations.getContent().stream()
-                .filter(loc -> {
-                    if (tags != null && !tags.isEmpty()) {
-                        if (!loc.getTags().stream().anyMatch(tags::contains)) return false;
-                    }
-                    if (minPrice != null && loc.getPricePerNight() != null) {
-                        if (loc.getPricePerNight().doubleValue() < minPrice) return false;
-                    }
-                    if (maxPrice != null && loc.getPricePerNight() != null) {
-                        if (loc.getPricePerNight().doubleValue() > maxPrice) return false;
-                    }
-                    if (rating != null) {
-                        if (loc.getAverageRating() == null || loc.getAverageRating() < rating) return false;
-                    }
-                    return true;
-                })
-                .collect(Collectors.toList());
+        Page<Location> locations = locationRepository.searchByCriteria(criteria, pageable);
+        return convertToPageResponse(locations);
+    }
+    
+    /**
+     * Restricts the search to locations that can take a stay from
+     * {@code checkIn} to {@code checkOut}. The check runs inside the search
+     * against the per-night inventory, so fully booked locations are dropped
+     * while Mongo pages and counts the rest.
+     */
+    private void setStay(LocationSearchCriteria criteria, LocalDate checkIn, LocalDate checkOut) {
+        if (checkIn == null || checkOut == null) {
+            throw new RuntimeException("checkIn and checkOut must be given together");
+        }
+        if (checkOut.isBefore(checkIn)) {
+            throw new RuntimeException("checkOut must not be before checkIn");
+        }
+        criteria.setAvailableFrom(checkIn);
+        criteria.setAvailableUntil(AvailabilityService.checkoutOf(checkIn, checkOut));
+    }
+    
+    /**
+     * Search that also returns counts per location type, top tags, price and
+     * rating ranges, computed in the same aggregation as the page of hits.
+     * Facets only depend on the filters, so they are cached briefly and
+     * later pages of the same search only run the hits branch.
+     */
+    public FacetedSearchResponse searchLocationsWithFacets(String query, List<String> tags, Double minPrice,
+                                                           Double maxPrice, Integer rating,
+                                                           Location.LocationType locationType, int page, int size) {
+        Pageable pageable = PageRequest.of(page, size);
+        LocationSearchCriteria criteria = toCriteria(query, tags, minPrice, maxPrice, rating, locationType);
+        
+        LocationFacets cached = facetCache.getIfPresent(criteria);
+        LocationFacetResult result = locationRepository.searchWithFacets(criteria, pageable, cached == null);
+        LocationFacets facets = cached;
+        if (facets == null) {
+            facets = result.getFacets();
+            facetCache.put(criteria, facets);
+        }
+        
+        Page<Location> hits = new PageImpl<>(result.getHits(), pageable, facets.getTotal());
+        return new FacetedSearchResponse(convertToPageResponse(hits), facets);
+    }
+    
+    /**
+     * Builds a normalized filter set: blank values dropped, keyword trimmed and
+     * lower-cased (text search ignores case) and tags de-duplicated and sorted,
+     * so equivalent requests share a facet cache entry.
+     */
+    private LocationSearchCriteria toCriteria(String query, List<String> tags, Double minPrice, Double maxPrice,
+                                              Integer rating, Location.LocationType locationType) {
+        LocationSearchCriteria criteria = new LocationSearchCriteria();
+        if (query != null && !query.isBlank()) {
+            criteria.setQuery(query.trim().toLowerCase(Locale.ROOT));
+        }
+        if (tags != null && !tags.isEmpty()) {
+            criteria.setTags(tags.stream().distinct().sorted().collect(Collectors.toList()));
+        }
+        criteria.setMinPrice(minPrice);
+        criteria.setMaxPrice(maxPrice);
+        criteria.setRating(rating);
+        criteria.setLocationType(locationType);
+        return criteria;
+    }
+    
+    /**
+     * "Near me" search ordered by distance. Pages are addressed by a distance
+     * cursor (last distance plus the ids seen at exactly that distance) instead
+     * of a skip offset.
+     */
+    private PageResponse<LocationDto> searchNear(LocationSearchCriteria criteria, String after, int size) {
+        Double minDistance = null;
+        List<String> excludeIds = List.of();
+        if (after != null && !after.isEmpty()) {
+            List<String> parts = CursorCodec.decode(after, 2);
+            try {
+                minDistance = Double.parseDouble(parts.get(0));
+            } catch (NumberFormatException e) {
+                throw new RuntimeException("Invalid cursor");
+            }
+            excludeIds = Arrays.asList(parts.get(1).split(","));
+        }
+        
+        // Fetch one extra row to find out whether another page exists
+        List<GeoResult<Location>> results = locationRepository.searchNear(criteria, minDistance, excludeIds, size + 1);
+        boolean hasNext = results.size() > size;
+        if (hasNext) {
+            results = results.subList(0, size);
+        }
         
-        Page<Location> filteredPage = new org.springframework.data.domain.PageImpl<>(
-                filtered, pageable, filtered.size());
+        List<LocationDto> content = convertToDtos(results.stream()
+                .map(GeoResult::getContent)
+                .collect(Collectors.toList()));
+        for (int i = 0; i < content.size(); i++) {
+            content.get(i).setDistanceKm(results.get(i).getDistance().getValue() / 1000);
+        }
         
-        return convertToPageResponse(filteredPage);
+        String nextCursor = null;
+        if (hasNext) {
+            double lastDistance = results.get(results.size() - 1).getDistance().getValue();
+            String tiedIds = results.stream()
+                    .filter(r -> r.getDistance().getValue() == lastDistance)
+                    .map(r -> r.getContent().getId())
+                    .collect(Collectors.joining(","));
+            nextCursor = CursorCodec.encode(List.of(Double.toString(lastDistance), tiedIds));
+        }
+        return PageResponse.ofCursor(content, size, after == null || after.isEmpty(), nextCursor);
     }
     
     @Transactional
@@ -89,12 +309,14 @@ public class LocationService {
         location.setPricePerNight(request.getPricePerNight());
         location.setTags(request.getTags() != null ? request.getTags() : List.of());
         location.setTicketRequired(request.isTicketRequired());
+        if (request.getTicketCapacity() != null) location.setTicketCapacity(request.getTicketCapacity());
         location.setLocationType(request.getLocationType());
         location.setOwnerId(userId);
         location.setCreatedAt(LocalDateTime.now());
         location.setUpdatedAt(LocalDateTime.now());
         
         location = locationRepository.save(location);
+        suggestionService.index(location);
         return convertToDto(location);
     }
     
@@ -115,11 +337,13 @@ public class LocationService {
         if (request.getPricePerNight() != null) location.setPricePerNight(request.getPricePerNight());
         if (request.getTags() != null) location.setTags(request.getTags());
         if (request.getLocationType() != null) location.setLocationType(request.getLocationType());
+        if (request.getTicketCapacity() != null) location.setTicketCapacity(request.getTicketCapacity());
         location.setTicketRequired(request.isTicketRequired());
-        location.setTicketAvailable(request.isTicketAvailable());
         location.setUpdatedAt(LocalDateTime.now());
         
         location = locationRepository.save(location);
+        locationCache.invalidate(id);
+        suggestionService.index(location);
         return convertToDto(location);
     }
     
@@ -133,6 +357,8 @@ public class LocationService {
         }
         
         locationRepository.delete(location);
+        locationCache.invalidate(id);
+        suggestionService.remove(id);
     }
     
     @Transactional
@@ -147,29 +373,136 @@ public class LocationService {
         location.getImageUrls().add(imageUrl);
         location.setUpdatedAt(LocalDateTime.now());
         location = locationRepository.save(location);
+        locationCache.invalidate(id);
         return convertToDto(location);
     }
     
-    @Transactional
-    public void updateLocationRating(String locationId) {
-        List<com.kheyma.model.Review> reviews = reviewRepository.findByLocationId(locationId);
-        if (reviews.isEmpty()) {
-            return;
+    /**
+     * Applies a review change to the location's rating totals with one atomic
+     * update, instead of reloading every review of the location.
+     *
+     * @param ratingDelta change of the rating sum (new rating, minus old rating, or minus removed rating)
+     * @param countDelta change of the review count (+1, 0 or -1)
+     */
+    public void adjustLocationRating(String locationId, int ratingDelta, int countDelta) {
+        Location location = locationRepository.incrementRating(locationId, ratingDelta, countDelta);
+        if (location == null) {
+            throw new RuntimeException("Location not found");
         }
+        locationCache.invalidate(locationId);
+        // Ranking of suggestions depends on the rating
+        suggestionService.index(location);
+    }
+    
+    /**
+     * Called after a reservation of the location was made or released. Its
+     * {@code ticketAvailable} may have changed, so the cached detail view is
+     * dropped and {@code updated_at} is touched to change the HTTP validators.
+     */
+    public void onReservationChanged(String locationId) {
+        locationRepository.touch(locationId);
+        locationCache.invalidate(locationId);
+    }
+    
+    /**
+     * Drops derived state after locations were rewritten in bulk.
+     */
+    public void invalidateCaches() {
+        locationCache.invalidateAll();
+        facetCache.invalidateAll();
+        suggestionService.buildIndex();
+    }
+    
+    /**
+     * Sort keys supported in cursor mode, with how their value is read from a
+     * location and restored from a cursor. A cursor value is tagged, so a
+     * missing value cannot be confused with the text {@code "null"}.
+     */
+    private enum KeysetField {
+        CREATED_AT("createdAt", Location::getCreatedAt, LocalDateTime::parse),
+        UPDATED_AT("updatedAt", Location::getUpdatedAt, LocalDateTime::parse),
+        PRICE_PER_NIGHT("pricePerNight", Location::getPricePerNight, BigDecimal::new),
+        AVERAGE_RATING("averageRating", Location::getAverageRating, Double::valueOf),
+        REVIEW_COUNT("reviewCount", Location::getReviewCount, Integer::valueOf),
+        TITLE("title", Location::getTitle, value -> value);
         
-        double avgRating = reviews.stream()
-                .mapToInt(com.kheyma.model.Review::getRating)
-                .average()
-                .orElse(0.0);
+        private final String property;
+        private final Function<Location, Object> accessor;
+        private final Function<String, Object> parser;
         
-        Location location = locationRepository.findById(locationId)
-                .orElseThrow(() -> new RuntimeException("Location not found"));
-        location.setAverageRating(avgRating);
-        location.setReviewCount(reviews.size());
-        locationRepository.save(location);
+        KeysetField(String property, Function<Location, Object> accessor, Function<String, Object> parser) {
+            this.property = property;
+            this.accessor = accessor;
+            this.parser = parser;
+        }
+        
+        static KeysetField of(String property) {
+            for (KeysetField field : values()) {
+                if (field.property.equals(property)) {
+                    return field;
+                }
+            }
+            throw new RuntimeException("Cursor pagination is not supported for sort field: " + property);
+        }
+        
+        private static final String NULL_VALUE = "n";
+        private static final String VALUE_PREFIX = "v";
+        
+        String format(Location location) {
+            Object value = accessor.apply(location);
+            if (value == null) {
+                return NULL_VALUE;
+            }
+            return VALUE_PREFIX + (value instanceof BigDecimal ? ((BigDecimal) value).toPlainString() : value);
+        }
+        
+        Object parse(String value) {
+            if (value.equals(NULL_VALUE)) {
+                return null;
+            }
+            if (!value.startsWith(VALUE_PREFIX)) {
+                throw new RuntimeException("Invalid cursor");
+            }
+            try {
+                return parser.apply(value.substring(VALUE_PREFIX.length()));
+            } catch (RuntimeException e) {
+                throw new RuntimeException("Invalid cursor");
+            }
+        }
+    }
+    
+    /**
+     * Approximate cache weight of a location in KB of text, so a few camps with
+     * long descriptions or many images cannot crowd out the rest.
+     */
+    private static int weighOf(LocationDto dto) {
+        long chars = (dto.getTitle() != null ? dto.getTitle().length() : 0)
+                + (dto.getDescription() != null ? dto.getDescription().length() : 0);
+        if (dto.getImageUrls() != null) {
+            for (String url : dto.getImageUrls()) {
+                chars += url.length();
+            }
+        }
+        return 1 + (int) (chars / 1024);
     }
     
     private LocationDto convertToDto(Location location) {
+        return convertToDtos(List.of(location)).get(0);
+    }
+    
+    /**
+     * Converts a page of locations, deriving {@code ticketAvailable} for all of
+     * them from one batch of occupancy timelines.
+     */
+    private List<LocationDto> convertToDtos(List<Location> locations) {
+        LocalDate today = LocalDate.now();
+        Set<String> soldOut = availabilityService.fullyBooked(locations, today, today.plusDays(1));
+        return locations.stream()
+                .map(location -> convertToDto(location, soldOut))
+                .collect(Collectors.toList());
+    }
+    
+    private LocationDto convertToDto(Location location, Set<String> soldOutToday) {
         LocationDto dto = new LocationDto();
         dto.setId(location.getId());
         dto.setTitle(location.getTitle());
@@ -182,7 +515,8 @@ public class LocationService {
         dto.setTags(location.getTags());
         dto.setImageUrls(location.getImageUrls());
         dto.setTicketRequired(location.isTicketRequired());
-        dto.setTicketAvailable(location.isTicketAvailable());
+        dto.setTicketAvailable(!soldOutToday.contains(location.getId()));
+        dto.setTicketCapacity(InventoryService.capacityOf(location));
         dto.setLocationType(location.getLocationType());
         dto.setOwnerId(location.getOwnerId());
         dto.setAverageRating(location.getAverageRating());
@@ -193,12 +527,8 @@ public class LocationService {
     }
     
     private PageResponse<LocationDto> convertToPageResponse(Page<Location> page) {
-        List<LocationDto> content = page.getContent().stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
-        
         return new PageResponse<>(
-                content,
+                convertToDtos(page.getContent()),
                 page.getNumber(),
                 page.getSize(),
                 page.getTotalElements(),
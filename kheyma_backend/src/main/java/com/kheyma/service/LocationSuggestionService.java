@@ -0,0 +1,267 @@
+package com.kheyma.service;
+
+import com.kheyma.dto.LocationSuggestionDto;
+import com.kheyma.model.Location;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+/**
+ * In-memory prefix index over location titles and tags, used for typeahead.
+ *
+ * Every title word, full title and tag is stored as a sorted key
+ * ({@code term + '\0' + locationId}), so a prefix lookup is a range scan over
+ * a skip list. Matches are ranked by average rating, then review count.
+ * One- and two-character prefixes match most of the index, so their ranked
+ * top entries are kept up to date on every write instead of scanned per
+ * keystroke. The index is built once at startup and kept in sync by
+ * {@link LocationService}.
+ */
+@Service
+public class LocationSuggestionService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(LocationSuggestionService.class);
+    
+    private static final char KEY_SEPARATOR = '\u0000';
+    private static final int MAX_LIMIT = 20;
+    private static final int SHORT_PREFIX_LENGTH = 2;
+    
+    private static final Comparator<LocationSuggestionDto> RANKING = Comparator
+            .comparing((LocationSuggestionDto s) -> s.getAverageRating() != null ? s.getAverageRating() : 0.0)
+            .thenComparing(s -> s.getReviewCount() != null ? s.getReviewCount() : 0)
+            .thenComparing(LocationSuggestionDto::getId, Comparator.reverseOrder());
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    // Replaced as a whole by buildIndex(), so a rebuild also drops deleted locations
+    private volatile SuggestionIndex current = new SuggestionIndex();
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void buildIndex() {
+        Query query = new Query();
+        query.fields().include("title", "tags", "averageRating", "reviewCount");
+        
+        long start = System.currentTimeMillis();
+        SuggestionIndex rebuilt = new SuggestionIndex();
+        try (Stream<Location> locations = mongoTemplate.stream(query, Location.class)) {
+            locations.forEach(rebuilt::put);
+        }
+        current = rebuilt;
+        logger.info("Location suggestion index built: {} locations, {} keys in {} ms",
+                rebuilt.keysByLocation.size(), rebuilt.entries.size(), System.currentTimeMillis() - start);
+    }
+    
+    public List<LocationSuggestionDto> suggest(String prefix, int limit) {
+        String normalized = normalize(prefix);
+        if (normalized.isEmpty()) {
+            return List.of();
+        }
+        int max = Math.max(1, Math.min(limit, MAX_LIMIT));
+        
+        SuggestionIndex suggestions = current;
+        if (normalized.length() <= SHORT_PREFIX_LENGTH) {
+            List<LocationSuggestionDto> top = suggestions.topByShortPrefix.getOrDefault(normalized, List.of());
+            return new ArrayList<>(top.subList(0, Math.min(max, top.size())));
+        }
+        return suggestions.rank(normalized, max);
+    }
+    
+    /**
+     * Adds or replaces the entries of one location.
+     */
+    public synchronized void index(Location location) {
+        current.put(location);
+    }
+    
+    public synchronized void remove(String locationId) {
+        current.remove(locationId);
+    }
+    
+    /**
+     * Keys, their owners and the short-prefix top lists. Readers may use it
+     * concurrently; writers are serialized by the service.
+     */
+    private static class SuggestionIndex {
+        private final ConcurrentSkipListMap<String, LocationSuggestionDto> entries = new ConcurrentSkipListMap<>();
+        
+        // Keys currently indexed per location, so updates and deletes can remove them
+        private final Map<String, Set<String>> keysByLocation = new ConcurrentHashMap<>();
+        
+        // Best MAX_LIMIT suggestions per short prefix, best first; lists are replaced, never modified
+        private final Map<String, List<LocationSuggestionDto>> topByShortPrefix = new ConcurrentHashMap<>();
+        
+        /**
+         * Best {@code max} matches of {@code prefix}, found by scanning its whole
+         * key range.
+         */
+        List<LocationSuggestionDto> rank(String prefix, int max) {
+            NavigableMap<String, LocationSuggestionDto> range =
+                    entries.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+            
+            // Bounded min-heap keeps the best `max` matches without sorting the whole range
+            PriorityQueue<LocationSuggestionDto> top = new PriorityQueue<>(max + 1, RANKING);
+            Set<String> seen = new HashSet<>();
+            for (LocationSuggestionDto candidate : range.values()) {
+                if (!seen.add(candidate.getId())) {
+                    continue;
+                }
+                top.offer(candidate);
+                if (top.size() > max) {
+                    top.poll();
+                }
+            }
+            
+            List<LocationSuggestionDto> result = new ArrayList<>(top);
+            result.sort(RANKING.reversed());
+            return result;
+        }
+        
+        /**
+         * Replaces the location's keys and updates the top lists in place. A
+         * prefix's range is only ranked again when the location may have
+         * dropped out of its list: it lost the prefix, or it fell to the last
+         * place of a full list, where an unlisted match may now beat it.
+         */
+        void put(Location location) {
+            if (location.getTitle() == null) {
+                remove(location.getId());
+                return;
+            }
+            String locationId = location.getId();
+            LocationSuggestionDto suggestion = new LocationSuggestionDto(
+                    locationId, location.getTitle(), location.getAverageRating(), location.getReviewCount());
+            
+            Set<String> keys = new LinkedHashSet<>();
+            for (String term : termsOf(location)) {
+                keys.add(term + KEY_SEPARATOR + locationId);
+            }
+            Set<String> oldKeys = keysByLocation.getOrDefault(locationId, Set.of());
+            for (String key : oldKeys) {
+                if (!keys.contains(key)) {
+                    entries.remove(key);
+                }
+            }
+            keys.forEach(key -> entries.put(key, suggestion));
+            keysByLocation.put(locationId, keys);
+            
+            Set<String> prefixes = shortPrefixesOf(keys);
+            for (String prefix : shortPrefixesOf(oldKeys)) {
+                if (!prefixes.contains(prefix) && isListed(prefix, locationId)) {
+                    rerank(prefix);
+                }
+            }
+            for (String prefix : prefixes) {
+                List<LocationSuggestionDto> top = topByShortPrefix.getOrDefault(prefix, List.of());
+                LocationSuggestionDto previous = top.stream()
+                        .filter(s -> s.getId().equals(locationId))
+                        .findFirst()
+                        .orElse(null);
+                if (previous == null && top.size() == MAX_LIMIT
+                        && RANKING.compare(suggestion, top.get(top.size() - 1)) <= 0) {
+                    continue;
+                }
+                
+                List<LocationSuggestionDto> updated = new ArrayList<>(top);
+                updated.remove(previous);
+                updated.add(suggestion);
+                updated.sort(RANKING.reversed());
+                if (updated.size() > MAX_LIMIT) {
+                    updated.remove(MAX_LIMIT);
+                }
+                boolean mayHaveDroppedOut = previous != null && updated.size() == MAX_LIMIT
+                        && updated.get(MAX_LIMIT - 1) == suggestion && RANKING.compare(suggestion, previous) < 0;
+                if (mayHaveDroppedOut) {
+                    rerank(prefix);
+                } else {
+                    topByShortPrefix.put(prefix, List.copyOf(updated));
+                }
+            }
+        }
+        
+        void remove(String locationId) {
+            Set<String> keys = keysByLocation.remove(locationId);
+            if (keys == null) {
+                return;
+            }
+            keys.forEach(entries::remove);
+            
+            // Only a prefix that listed the location needs its range ranked again
+            for (String prefix : shortPrefixesOf(keys)) {
+                if (isListed(prefix, locationId)) {
+                    rerank(prefix);
+                }
+            }
+        }
+        
+        private boolean isListed(String prefix, String locationId) {
+            List<LocationSuggestionDto> top = topByShortPrefix.get(prefix);
+            return top != null && top.stream().anyMatch(s -> s.getId().equals(locationId));
+        }
+        
+        private void rerank(String prefix) {
+            List<LocationSuggestionDto> ranked = rank(prefix, MAX_LIMIT);
+            if (ranked.isEmpty()) {
+                topByShortPrefix.remove(prefix);
+            } else {
+                topByShortPrefix.put(prefix, List.copyOf(ranked));
+            }
+        }
+    }
+    
+    private static Set<String> shortPrefixesOf(Set<String> keys) {
+        Set<String> prefixes = new HashSet<>();
+        for (String key : keys) {
+            String term = key.substring(0, key.indexOf(KEY_SEPARATOR));
+            for (int length = 1; length <= Math.min(SHORT_PREFIX_LENGTH, term.length()); length++) {
+                prefixes.add(term.substring(0, length));
+            }
+        }
+        return prefixes;
+    }
+    
+    private static Set<String> termsOf(Location location) {
+        Set<String> terms = new LinkedHashSet<>();
+        String title = normalize(location.getTitle());
+        if (!title.isEmpty()) {
+            terms.add(title);
+            for (String word : title.split("[^\\p{L}\\p{N}]+")) {
+                if (!word.isEmpty()) {
+                    terms.add(word);
+                }
+            }
+        }
+        if (location.getTags() != null) {
+            for (String tag : location.getTags()) {
+                String normalized = normalize(tag);
+                if (!normalized.isEmpty()) {
+                    terms.add(normalized);
+                }
+            }
+        }
+        return terms;
+    }
+    
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,189 @@
+package com.kheyma.service;
+
+import com.kheyma.model.OutboxEvent;
+import com.kheyma.model.Transaction;
+import com.kheyma.repository.OutboxRepository;
+import com.kheyma.repository.TransactionRepository;
+import com.kheyma.service.payment.PaymentGateway;
+import com.kheyma.service.payment.PaymentRequest;
+import com.kheyma.service.payment.PaymentResult;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives PENDING bookings to CONFIRMED or CANCELLED by charging them through
+ * the {@link PaymentGateway}, off the request path.
+ *
+ * Due {@link OutboxEvent}s are claimed one at a time with an atomic lease, so
+ * several nodes can run workers side by side, and are handed to a bounded
+ * pool; a node never claims more events than it has idle workers. Failed
+ * charges are retried with exponential backoff and the booking is cancelled
+ * once the attempts run out.
+ */
+@Service
+public class PaymentWorker {
+    
+    private static final Logger logger = LoggerFactory.getLogger(PaymentWorker.class);
+    
+    private static final int MAX_ATTEMPTS = 8;
+    // Longer than any gateway call; an event still leased after this is retried
+    private static final Duration LEASE = Duration.ofMinutes(2);
+    private static final Duration MAX_BACKOFF = Duration.ofMinutes(5);
+    // Time for a transaction to be saved after its outbox event
+    private static final Duration ORPHAN_GRACE = Duration.ofMinutes(1);
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    @Autowired
+    private OutboxRepository outboxRepository;
+    
+    @Autowired
+    private TransactionRepository transactionRepository;
+    
+    @Autowired
+    private TransactionService transactionService;
+    
+    @Autowired
+    private PaymentGateway paymentGateway;
+    
+    @Value("${app.payments.workers:8}")
+    private int workers;
+    
+    private ExecutorService executor;
+    private Semaphore idleWorkers;
+    
+    @PostConstruct
+    public void start() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(workers, task -> {
+            Thread thread = new Thread(task, "payment-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        idleWorkers = new Semaphore(workers);
+    }
+    
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        executor.shutdown();
+        // Unfinished events stay leased and are picked up again once the lease expires
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+    
+    @Scheduled(fixedDelayString = "${app.payments.poll-interval-ms:500}")
+    public void dispatchDueEvents() {
+        while (idleWorkers.tryAcquire()) {
+            OutboxEvent event = claimNext();
+            if (event == null) {
+                idleWorkers.release();
+                return;
+            }
+            executor.execute(() -> {
+                try {
+                    process(event);
+                } catch (RuntimeException e) {
+                    logger.error("Payment event {} failed, retrying after lease expiry", event.getId(), e);
+                } finally {
+                    idleWorkers.release();
+                }
+            });
+        }
+    }
+    
+    private OutboxEvent claimNext() {
+        LocalDateTime now = LocalDateTime.now();
+        Query due = new Query(Criteria.where("type").is(OutboxEvent.Type.PAYMENT_REQUESTED)
+                .and("nextAttemptAt").lte(now))
+                .with(Sort.by("nextAttemptAt"));
+        return mongoTemplate.findAndModify(due,
+                new Update().set("nextAttemptAt", now.plus(LEASE)).inc("attempts", 1),
+                FindAndModifyOptions.options().returnNew(true),
+                OutboxEvent.class);
+    }
+    
+    private void process(OutboxEvent event) {
+        Transaction transaction = transactionRepository.findById(event.getAggregateId()).orElse(null);
+        if (transaction == null) {
+            if (event.getCreatedAt().isBefore(LocalDateTime.now().minus(ORPHAN_GRACE))) {
+                // The booking failed after its event was written
+                outboxRepository.delete(event);
+            } else {
+                retryAfter(event, ORPHAN_GRACE);
+            }
+            return;
+        }
+        if (transaction.getStatus() != Transaction.TransactionStatus.PENDING) {
+            outboxRepository.delete(event);
+            return;
+        }
+        if (transaction.getExpiresAt() != null && transaction.getExpiresAt().isBefore(LocalDateTime.now())) {
+            // Too late to charge; the hold is given up instead of paid for
+            transactionService.failPayment(transaction.getId());
+            outboxRepository.delete(event);
+            return;
+        }
+        
+        PaymentResult result;
+        try {
+            result = paymentGateway.charge(new PaymentRequest(transaction.getId(), transaction.getUserId(),
+                    transaction.getAmount(), transaction.getPaymentMethod()));
+        } catch (RuntimeException e) {
+            if (event.getAttempts() >= MAX_ATTEMPTS) {
+                logger.warn("Giving up on payment of transaction {} after {} attempts",
+                        transaction.getId(), event.getAttempts(), e);
+                transactionService.failPayment(transaction.getId());
+                outboxRepository.delete(event);
+            } else {
+                retryAfter(event, backoff(event.getAttempts()));
+            }
+            return;
+        }
+        
+        if (!transactionService.applyPaymentResult(transaction.getId(), result) && result.isApproved()) {
+            // Cancelled while it was being charged
+            refund(transaction.getId(), result.getPaymentId());
+        }
+        outboxRepository.delete(event);
+    }
+    
+    private void refund(String transactionId, String paymentId) {
+        try {
+            paymentGateway.refund(paymentId);
+        } catch (RuntimeException e) {
+            logger.error("Refund of payment {} for cancelled transaction {} failed and needs manual follow-up",
+                    paymentId, transactionId, e);
+        }
+    }
+    
+    private void retryAfter(OutboxEvent event, Duration delay) {
+        mongoTemplate.updateFirst(new Query(Criteria.where("id").is(event.getId())),
+                new Update().set("nextAttemptAt", LocalDateTime.now().plus(delay)),
+                OutboxEvent.class);
+    }
+    
+    private static Duration backoff(int attempts) {
+        Duration delay = Duration.ofSeconds(1L << Math.min(attempts, 16));
+        return delay.compareTo(MAX_BACKOFF) > 0 ? MAX_BACKOFF : delay;
+    }
+}
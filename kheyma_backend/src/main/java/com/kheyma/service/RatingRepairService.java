@@ -0,0 +1,43 @@
+package com.kheyma.service;
+
+import com.kheyma.repository.LocationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Recomputes location rating totals from the reviews collection.
+ * 
+ * Ratings are maintained incrementally on every review write; this job
+ * corrects any drift (e.g. a failed write between saving a review and
+ * updating its location) and back-fills {@code rating_sum} on old data.
+ */
+@Service
+public class RatingRepairService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(RatingRepairService.class);
+    
+    @Autowired
+    private LocationRepository locationRepository;
+    
+    @Autowired
+    private LocationService locationService;
+    
+    @Scheduled(cron = "${app.ratings.repair-cron:0 0 3 * * *}")
+    public void scheduledRepair() {
+        repairRatings();
+    }
+    
+    public int repairRatings() {
+        long start = System.currentTimeMillis();
+        int updated = locationRepository.rebuildRatings();
+        if (updated > 0) {
+            locationService.invalidateCaches();
+        }
+        logger.info("Rating repair finished: {} locations updated in {} ms",
+                updated, System.currentTimeMillis() - start);
+        return updated;
+    }
+}
@@ -3,6 +3,7 @@ package com.kheyma.service;
 import com.kheyma.dto.*;
 import com.kheyma.model.Review;
 import com.kheyma.model.User;
+import com.kheyma.repository.ContentVersion;
 import com.kheyma.repository.LocationRepository;
 import com.kheyma.repository.ReviewRepository;
 import com.kheyma.repository.UserRepository;
@@ -59,7 +60,7 @@ public class ReviewService {
         review = reviewRepository.save(review);
         
         // Update location rating
-        locationService.updateLocationRating(request.getLocationId());
+        locationService.adjustLocationRating(request.getLocationId(), review.getRating(), 1);
         
         return convertToDto(review);
     }
@@ -70,6 +71,10 @@ public class ReviewService {
         return convertToPageResponse(reviews);
     }
     
+    public ContentVersion getLocationReviewsVersion(String locationId) {
+        return reviewRepository.findVersionByLocationId(locationId);
+    }
+    
     public PageResponse<ReviewDto> getReviewsByUser(String userId, int page, int size) {
         Pageable pageable = PageRequest.of(page, size);
         Page<Review> reviews = reviewRepository.findByUserId(userId, pageable);
@@ -85,6 +90,7 @@ public class ReviewService {
             throw new RuntimeException("You don't have permission to update this review");
         }
         
+        int previousRating = review.getRating();
         if (request.getRating() != null) review.setRating(request.getRating());
         if (request.getComment() != null) review.setComment(request.getComment());
         review.setUpdatedAt(LocalDateTime.now());
@@ -92,7 +98,9 @@ public class ReviewService {
         review = reviewRepository.save(review);
         
         // Update location rating
-        locationService.updateLocationRating(review.getLocationId());
+        if (review.getRating() != previousRating) {
+            locationService.adjustLocationRating(review.getLocationId(), review.getRating() - previousRating, 0);
+        }
         
         return convertToDto(review);
     }
@@ -110,7 +118,7 @@ public class ReviewService {
         reviewRepository.delete(review);
         
         // Update location rating
-        locationService.updateLocationRating(locationId);
+        locationService.adjustLocationRating(locationId, -review.getRating(), -1);
     }
     
     private ReviewDto convertToDto(Review review) {
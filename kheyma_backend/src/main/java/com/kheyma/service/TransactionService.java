@@ -1,60 +1,181 @@
 package com.kheyma.service;
 
 import com.kheyma.dto.*;
+import com.kheyma.model.Location;
+import com.kheyma.model.OutboxEvent;
 import com.kheyma.model.Transaction;
 import com.kheyma.repository.LocationRepository;
+import com.kheyma.repository.OutboxRepository;
 import com.kheyma.repository.TransactionRepository;
+import com.kheyma.service.payment.PaymentResult;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
 public class TransactionService {
     
+    public static final int HOLD_SWEEP_BATCH = 200;
+    
     @Autowired
     private TransactionRepository transactionRepository;
     
     @Autowired
     private LocationRepository locationRepository;
     
+    @Autowired
+    private AvailabilityService availabilityService;
+    
+    @Autowired
+    private InventoryService inventoryService;
+    
+    @Autowired
+    private LocationService locationService;
+    
+    @Autowired
+    private OutboxRepository outboxRepository;
+    
+    @Autowired
+    private TransactionStatusNotifier statusNotifier;
+    
+    @Autowired
+    private BookingStatsService bookingStatsService;
+    
+    @Value("${app.payments.hold-ttl:15m}")
+    private Duration holdTtl;
+    
+    /**
+     * Books the dates and returns the transaction as PENDING; the charge runs
+     * later on a payment worker, which confirms or cancels the booking. The
+     * dates are held until {@code expiresAt}, after which an unpaid booking is
+     * cancelled.
+     */
     @Transactional
     public TransactionDto createTransaction(CreateTransactionRequest request, String userId) {
         // Verify location exists
         locationRepository.findById(request.getLocationId())
                 .orElseThrow(() -> new RuntimeException("Location not found"));
         
-        // Check for date conflicts (simplified - can be enhanced)
-        // In a real system, you'd check if the location is already booked for these dates
+        if (request.getEndDate().isBefore(request.getStartDate())) {
+            throw new RuntimeException("End date must not be before start date");
+        }
         
-        Transaction transaction = new Transaction();
-        transaction.setLocationId(request.getLocationId());
-        transaction.setUserId(userId);
-        transaction.setPackageType(request.getPackageType());
-        transaction.setAmount(request.getAmount());
-        transaction.setStartDate(request.getStartDate());
-        transaction.setEndDate(request.getEndDate());
-        transaction.setPaymentMethod(request.getPaymentMethod());
-        transaction.setStatus(Transaction.TransactionStatus.PENDING);
-        transaction.setPaymentId(UUID.randomUUID().toString()); // In production, use actual payment gateway ID
-        transaction.setCreatedAt(LocalDateTime.now());
-        transaction.setUpdatedAt(LocalDateTime.now());
+        // Fast read-side check against active reservations
+        if (!availabilityService.isAvailable(request.getLocationId(), request.getStartDate(), request.getEndDate())) {
+            throw new RuntimeException("Location is not available for the selected dates");
+        }
+        
+        Transaction transaction = newPendingTransaction(request, userId);
         
-        // In a real system, you would integrate with payment gateway here
-        // For now, we'll set it to CONFIRMED after creation
-        transaction.setStatus(Transaction.TransactionStatus.CONFIRMED);
+        // Atomically claim the nights before writing the booking; concurrent bookers of
+        // the same nights race on the night documents and only one of them wins
+        reserve(request);
         
-        transaction = transactionRepository.save(transaction);
+        // The payment request is written first: a transaction can never exist without
+        // one, and a request whose transaction was never saved is dropped by the worker.
+        // Any failure after the nights were claimed gives them back
+        OutboxEvent paymentRequest = null;
+        try {
+            paymentRequest = outboxRepository.insert(paymentRequestFor(transaction));
+            transaction = transactionRepository.insert(transaction);
+        } catch (RuntimeException e) {
+            if (paymentRequest != null) {
+                outboxRepository.delete(paymentRequest);
+            }
+            inventoryService.release(request.getLocationId(), request.getStartDate(), request.getEndDate());
+            throw e;
+        } finally {
+            availabilityService.onReservationChanged(request.getLocationId());
+            locationService.onReservationChanged(request.getLocationId());
+        }
+        bookingStatsService.recordBookings(List.of(transaction));
         return convertToDto(transaction);
     }
     
+    /**
+     * Books several stays at once, all or nothing. Locations are loaded with a
+     * single {@code $in} query, availability is checked for the whole batch
+     * (stays of the same location count against each other), and the
+     * transactions and their payment requests are written with one bulk
+     * insert each. If any step fails, everything done so far is undone.
+     */
+    @Transactional
+    public List<TransactionDto> createTransactions(CreateBatchTransactionRequest request, String userId) {
+        List<CreateTransactionRequest> items = request.getItems();
+        for (CreateTransactionRequest item : items) {
+            if (item.getEndDate().isBefore(item.getStartDate())) {
+                throw new RuntimeException("End date must not be before start date");
+            }
+        }
+        
+        Set<String> locationIds = items.stream()
+                .map(CreateTransactionRequest::getLocationId)
+                .collect(Collectors.toSet());
+        Map<String, Location> locations = new HashMap<>();
+        locationRepository.findAllById(locationIds).forEach(location -> locations.put(location.getId(), location));
+        for (String locationId : locationIds) {
+            if (!locations.containsKey(locationId)) {
+                throw new RuntimeException("Location not found: " + locationId);
+            }
+        }
+        
+        String unavailable = availabilityService.findUnavailable(locations, items);
+        if (unavailable != null) {
+            throw new RuntimeException("Location " + unavailable + " is not available for the selected dates");
+        }
+        
+        List<CreateTransactionRequest> reserved = new ArrayList<>();
+        List<Transaction> transactions = new ArrayList<>();
+        List<OutboxEvent> paymentRequests = new ArrayList<>();
+        try {
+            for (CreateTransactionRequest item : items) {
+                reserve(item);
+                reserved.add(item);
+                Transaction transaction = newPendingTransaction(item, userId);
+                transactions.add(transaction);
+                paymentRequests.add(paymentRequestFor(transaction));
+            }
+            paymentRequests = outboxRepository.insert(paymentRequests);
+            transactions = transactionRepository.insert(transactions);
+        } catch (RuntimeException e) {
+            // Unordered clean-up of whatever part of the batch was written
+            transactionRepository.deleteAllById(transactions.stream()
+                    .map(Transaction::getId)
+                    .collect(Collectors.toList()));
+            outboxRepository.deleteAllById(paymentRequests.stream()
+                    .map(OutboxEvent::getId)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList()));
+            for (CreateTransactionRequest item : reserved) {
+                inventoryService.release(item.getLocationId(), item.getStartDate(), item.getEndDate());
+            }
+            throw e;
+        } finally {
+            for (String locationId : locationIds) {
+                availabilityService.onReservationChanged(locationId);
+                locationService.onReservationChanged(locationId);
+            }
+        }
+        bookingStatsService.recordBookings(transactions);
+        return transactions.stream().map(this::convertToDto).collect(Collectors.toList());
+    }
+    
     public PageResponse<TransactionDto> getUserTransactions(String userId, int page, int size) {
         Pageable pageable = PageRequest.of(page, size);
         Page<Transaction> transactions = transactionRepository.findByUserId(userId, pageable);
@@ -89,11 +210,125 @@ public class TransactionService {
             throw new RuntimeException("Cannot cancel a completed transaction");
         }
         
-        transaction.setStatus(Transaction.TransactionStatus.CANCELLED);
-        transaction.setUpdatedAt(LocalDateTime.now());
+        boolean wasActive = AvailabilityService.ACTIVE_STATUSES.contains(transaction.getStatus());
+        // Conditional on the status we checked, so a payment worker confirming the
+        // booking at the same moment cannot be overwritten
+        Transaction cancelled = transactionRepository.transitionStatus(
+                id, transaction.getStatus(), Transaction.TransactionStatus.CANCELLED, null);
+        if (cancelled == null) {
+            throw new RuntimeException("Transaction was updated concurrently, please retry");
+        }
         
-        transaction = transactionRepository.save(transaction);
-        return convertToDto(transaction);
+        if (wasActive) {
+            releaseReservation(cancelled);
+            bookingStatsService.recordCancellation(cancelled);
+        }
+        TransactionDto dto = convertToDto(cancelled);
+        statusNotifier.publish(dto);
+        return dto;
+    }
+    
+    /**
+     * Status stream for {@code GET /transactions/{id}/events}.
+     */
+    public SseEmitter subscribeToStatus(String id, String userId, boolean isAdmin) {
+        getTransactionById(id, userId, isAdmin);
+        return statusNotifier.subscribe(id, () -> getTransactionById(id, userId, isAdmin));
+    }
+    
+    /**
+     * Applies the gateway's answer to a PENDING booking: CONFIRMED with the
+     * payment id when approved, CANCELLED with its nights released otherwise.
+     *
+     * @return false if the booking was no longer pending (e.g. cancelled by the user meanwhile)
+     */
+    public boolean applyPaymentResult(String transactionId, PaymentResult result) {
+        if (!result.isApproved()) {
+            return cancelPending(transactionId);
+        }
+        Transaction confirmed = transactionRepository.confirmHold(transactionId, result.getPaymentId());
+        if (confirmed == null) {
+            // Either no longer pending, or the hold expired while the charge ran
+            cancelPending(transactionId);
+            return false;
+        }
+        statusNotifier.publish(convertToDto(confirmed));
+        return true;
+    }
+    
+    /**
+     * Cancels a PENDING booking whose payment could not be completed.
+     */
+    public boolean failPayment(String transactionId) {
+        return cancelPending(transactionId);
+    }
+    
+    /**
+     * Cancels PENDING bookings whose hold has expired and releases their nights.
+     *
+     * @param locationId only expire holds of this location, or null for any
+     * @return number of bookings cancelled
+     */
+    public int expireHolds(String locationId, int limit) {
+        int expired = 0;
+        for (Transaction hold : transactionRepository.findExpiredHolds(locationId, LocalDateTime.now(), limit)) {
+            if (cancelPending(hold.getId())) {
+                expired++;
+            }
+        }
+        return expired;
+    }
+    
+    private Transaction newPendingTransaction(CreateTransactionRequest request, String userId) {
+        Transaction transaction = new Transaction();
+        transaction.setId(new ObjectId().toHexString());
+        transaction.setLocationId(request.getLocationId());
+        transaction.setUserId(userId);
+        transaction.setPackageType(request.getPackageType());
+        transaction.setAmount(request.getAmount());
+        transaction.setStartDate(request.getStartDate());
+        transaction.setEndDate(request.getEndDate());
+        transaction.setPaymentMethod(request.getPaymentMethod());
+        transaction.setStatus(Transaction.TransactionStatus.PENDING);
+        transaction.setExpiresAt(LocalDateTime.now().plus(holdTtl));
+        transaction.setCreatedAt(LocalDateTime.now());
+        transaction.setUpdatedAt(LocalDateTime.now());
+        return transaction;
+    }
+    
+    private static OutboxEvent paymentRequestFor(Transaction transaction) {
+        return new OutboxEvent(null, OutboxEvent.Type.PAYMENT_REQUESTED, transaction.getId(), 0,
+                LocalDateTime.now(), LocalDateTime.now());
+    }
+    
+    private void reserve(CreateTransactionRequest request) {
+        try {
+            inventoryService.reserve(request.getLocationId(), request.getStartDate(), request.getEndDate());
+        } catch (RuntimeException e) {
+            // The nights may still be taken by expired holds the sweeper has not reached yet
+            if (expireHolds(request.getLocationId(), HOLD_SWEEP_BATCH) == 0) {
+                throw e;
+            }
+            inventoryService.reserve(request.getLocationId(), request.getStartDate(), request.getEndDate());
+        }
+    }
+    
+    private boolean cancelPending(String transactionId) {
+        Transaction cancelled = transactionRepository.transitionStatus(transactionId,
+                Transaction.TransactionStatus.PENDING, Transaction.TransactionStatus.CANCELLED, null);
+        if (cancelled == null) {
+            return false;
+        }
+        releaseReservation(cancelled);
+        bookingStatsService.recordCancellation(cancelled);
+        statusNotifier.publish(convertToDto(cancelled));
+        return true;
+    }
+    
+    private void releaseReservation(Transaction transaction) {
+        inventoryService.release(transaction.getLocationId(), transaction.getStartDate(), transaction.getEndDate());
+        availabilityService.onReservationChanged(transaction.getLocationId());
+        locationService.onReservationChanged(transaction.getLocationId());
     }
     
     private TransactionDto convertToDto(Transaction transaction) {
@@ -108,6 +343,7 @@ public class TransactionService {
         dto.setPaymentMethod(transaction.getPaymentMethod());
         dto.setStatus(transaction.getStatus());
         dto.setPaymentId(transaction.getPaymentId());
+        dto.setExpiresAt(transaction.getExpiresAt());
         dto.setCreatedAt(transaction.getCreatedAt());
         dto.setUpdatedAt(transaction.getUpdatedAt());
         return dto;
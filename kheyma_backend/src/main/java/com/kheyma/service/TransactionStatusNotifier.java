@@ -0,0 +1,68 @@
+package com.kheyma.service;
+
+import com.kheyma.dto.TransactionDto;
+import com.kheyma.model.Transaction;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Pushes transaction status changes to clients waiting on a server-sent
+ * event stream.
+ * 
+ * Subscribers are held per node, so a change made by another node is only
+ * seen when the stream times out; clients then poll
+ * {@code GET /transactions/{id}} or subscribe again.
+ */
+@Service
+public class TransactionStatusNotifier {
+    
+    private static final long STREAM_TIMEOUT_MS = 60_000;
+    
+    private final ConcurrentMap<String, Set<SseEmitter>> subscribers = new ConcurrentHashMap<>();
+    
+    /**
+     * Opens a stream that starts with the current status and ends once the
+     * transaction is no longer pending.
+     *
+     * @param current reads the transaction; called after subscribing so no change is missed
+     */
+    public SseEmitter subscribe(String transactionId, Supplier<TransactionDto> current) {
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
+        Set<SseEmitter> emitters = subscribers.computeIfAbsent(transactionId, id -> ConcurrentHashMap.newKeySet());
+        emitters.add(emitter);
+        Runnable unsubscribe = () -> subscribers.computeIfPresent(transactionId, (id, set) -> {
+            set.remove(emitter);
+            return set.isEmpty() ? null : set;
+        });
+        emitter.onCompletion(unsubscribe);
+        emitter.onError(e -> unsubscribe.run());
+        
+        send(emitter, current.get());
+        return emitter;
+    }
+    
+    public void publish(TransactionDto transaction) {
+        Set<SseEmitter> emitters = subscribers.get(transaction.getId());
+        if (emitters != null) {
+            emitters.forEach(emitter -> send(emitter, transaction));
+        }
+    }
+    
+    private void send(SseEmitter emitter, TransactionDto transaction) {
+        try {
+            emitter.send(SseEmitter.event().name("status").data(transaction));
+            if (transaction.getStatus() != Transaction.TransactionStatus.PENDING) {
+                emitter.complete();
+            }
+        } catch (IOException | IllegalStateException e) {
+            // Client went away or the stream is already closed
+            emitter.completeWithError(e);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.kheyma.service.payment;
+
+/**
+ * External payment provider. Calls may be slow or fail; they are only made
+ * from the payment workers, never on a request thread.
+ */
+public interface PaymentGateway {
+    
+    /**
+     * Charges a booking. Declines are reported in the result; an exception
+     * means the outcome is unknown and the charge will be retried, so
+     * implementations should use {@link PaymentRequest#getReference()} as the
+     * provider's idempotency key.
+     */
+    PaymentResult charge(PaymentRequest request);
+    
+    /**
+     * Refunds a charge that could not be applied, e.g. because the booking was
+     * cancelled while it was being paid.
+     */
+    void refund(String paymentId);
+}
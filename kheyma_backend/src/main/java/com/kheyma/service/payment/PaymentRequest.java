@@ -0,0 +1,19 @@
+package com.kheyma.service.payment;
+
+import com.kheyma.model.Transaction;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaymentRequest {
+    // Our transaction id; the same for every retry of one charge
+    private String reference;
+    private String userId;
+    private BigDecimal amount;
+    private Transaction.PaymentMethod paymentMethod;
+}
@@ -0,0 +1,24 @@
+package com.kheyma.service.payment;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaymentResult {
+    private boolean approved;
+    // Provider's id of the charge, set when approved
+    private String paymentId;
+    // Provider's reason, set when declined
+    private String declineReason;
+    
+    public static PaymentResult approved(String paymentId) {
+        return new PaymentResult(true, paymentId, null);
+    }
+    
+    public static PaymentResult declined(String reason) {
+        return new PaymentResult(false, null, reason);
+    }
+}
@@ -0,0 +1,49 @@
+package com.kheyma.service.payment;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * Local stand-in for a real provider: approves every positive amount after a
+ * configurable delay. Active unless {@code app.payments.gateway} selects
+ * another implementation.
+ */
+@Service
+@ConditionalOnProperty(name = "app.payments.gateway", havingValue = "stub", matchIfMissing = true)
+public class StubPaymentGateway implements PaymentGateway {
+    
+    private static final Logger logger = LoggerFactory.getLogger(StubPaymentGateway.class);
+    
+    @Value("${app.payments.stub-latency-ms:200}")
+    private long latencyMs;
+    
+    @Override
+    public PaymentResult charge(PaymentRequest request) {
+        simulateLatency();
+        if (request.getAmount() == null || request.getAmount().compareTo(BigDecimal.ZERO) <= 0) {
+            return PaymentResult.declined("Invalid amount");
+        }
+        return PaymentResult.approved("stub_" + UUID.nameUUIDFromBytes(request.getReference().getBytes()));
+    }
+    
+    @Override
+    public void refund(String paymentId) {
+        simulateLatency();
+        logger.info("Stub refund of payment {}", paymentId);
+    }
+    
+    private void simulateLatency() {
+        try {
+            Thread.sleep(latencyMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Payment interrupted", e);
+        }
+    }
+}
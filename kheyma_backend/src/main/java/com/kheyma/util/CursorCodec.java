@@ -0,0 +1,38 @@
+package com.kheyma.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Encodes keyset pagination positions as opaque, URL-safe tokens.
+ * A cursor is an ordered list of string parts; clients must treat it as a blob.
+ */
+public final class CursorCodec {
+    
+    private static final char SEPARATOR = '\u001F';
+    
+    private CursorCodec() {
+    }
+    
+    public static String encode(List<String> parts) {
+        String joined = String.join(String.valueOf(SEPARATOR), parts);
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(joined.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    public static List<String> decode(String cursor, int expectedParts) {
+        try {
+            String joined = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            List<String> parts = new ArrayList<>(Arrays.asList(joined.split(String.valueOf(SEPARATOR), -1)));
+            if (parts.size() != expectedParts) {
+                throw new IllegalArgumentException("Unexpected cursor length");
+            }
+            return parts;
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Invalid cursor");
+        }
+    }
+}
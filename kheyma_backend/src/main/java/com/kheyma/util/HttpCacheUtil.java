@@ -0,0 +1,39 @@
+package com.kheyma.util;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+/**
+ * Helpers for building HTTP validators (ETag / Last-Modified) from document versions.
+ */
+public final class HttpCacheUtil {
+    
+    private HttpCacheUtil() {
+    }
+    
+    /**
+     * Strong ETag for a single document: its id plus last modification time.
+     */
+    public static String strongETag(String id, LocalDateTime updatedAt) {
+        return "\"" + id + "-" + Long.toHexString(toEpochMilli(updatedAt)) + "\"";
+    }
+    
+    /**
+     * Weak ETag for a computed representation (list pages), derived from
+     * everything that can change its content.
+     */
+    public static String weakETag(Object... parts) {
+        String joined = Arrays.stream(parts).map(String::valueOf).collect(Collectors.joining("|"));
+        CRC32 crc = new CRC32();
+        crc.update(joined.getBytes(StandardCharsets.UTF_8));
+        return "W/\"" + Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(joined.hashCode()) + "\"";
+    }
+    
+    public static long toEpochMilli(LocalDateTime dateTime) {
+        return dateTime == null ? -1 : dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
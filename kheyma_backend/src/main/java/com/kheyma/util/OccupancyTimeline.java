@@ -0,0 +1,94 @@
+package com.kheyma.util;
+
+import java.time.LocalDate;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Per-day occupancy of one location, stored as a step function over dates.
+ * 
+ * Each key is a date where the occupancy changes and maps to the number of
+ * reservations covering that date until the next key; dates before the first
+ * key have occupancy 0. Adding or removing a reservation only touches its two
+ * boundaries, and an overlap check is a floor lookup plus a walk over the
+ * (few) steps inside the requested range, i.e. O(log n + k).
+ * 
+ * Ranges are half-open: {@code [start, end)}.
+ */
+public class OccupancyTimeline {
+    
+    private final TreeMap<LocalDate, Integer> steps = new TreeMap<>();
+    
+    public synchronized void add(LocalDate start, LocalDate end, int delta) {
+        if (!start.isBefore(end) || delta == 0) {
+            return;
+        }
+        split(start);
+        split(end);
+        for (Map.Entry<LocalDate, Integer> step : steps.subMap(start, true, end, false).entrySet()) {
+            step.setValue(step.getValue() + delta);
+        }
+        // Only the two boundaries can have become redundant
+        compact(end);
+        compact(start);
+    }
+    
+    /**
+     * Highest occupancy of any day in {@code [from, to)}.
+     */
+    public synchronized int maxOccupancy(LocalDate from, LocalDate to) {
+        int max = occupancyAt(from);
+        for (int value : steps.subMap(from, false, to, false).values()) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+    
+    public synchronized int occupancyAt(LocalDate day) {
+        Map.Entry<LocalDate, Integer> step = steps.floorEntry(day);
+        return step == null ? 0 : step.getValue();
+    }
+    
+    /**
+     * Days in {@code [from, to)} whose occupancy reaches {@code capacity};
+     * bit {@code i} stands for {@code from.plusDays(i)}.
+     */
+    public synchronized BitSet fullDays(LocalDate from, LocalDate to, int capacity) {
+        BitSet full = new BitSet();
+        int occupancy = occupancyAt(from);
+        Iterator<Map.Entry<LocalDate, Integer>> changes = steps.subMap(from, false, to, false).entrySet().iterator();
+        Map.Entry<LocalDate, Integer> next = changes.hasNext() ? changes.next() : null;
+        
+        int index = 0;
+        for (LocalDate day = from; day.isBefore(to); day = day.plusDays(1), index++) {
+            if (next != null && !day.isBefore(next.getKey())) {
+                occupancy = next.getValue();
+                next = changes.hasNext() ? changes.next() : null;
+            }
+            if (occupancy >= capacity) {
+                full.set(index);
+            }
+        }
+        return full;
+    }
+    
+    private void split(LocalDate at) {
+        if (!steps.containsKey(at)) {
+            Map.Entry<LocalDate, Integer> previous = steps.lowerEntry(at);
+            steps.put(at, previous == null ? 0 : previous.getValue());
+        }
+    }
+    
+    private void compact(LocalDate at) {
+        Integer value = steps.get(at);
+        if (value == null) {
+            return;
+        }
+        Map.Entry<LocalDate, Integer> previous = steps.lowerEntry(at);
+        if ((previous == null ? 0 : previous.getValue()) == value) {
+            steps.remove(at);
+        }
+    }
+}
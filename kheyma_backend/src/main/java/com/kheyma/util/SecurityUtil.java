@@ -2,6 +2,7 @@ package com.kheyma.util;
 
 import com.kheyma.model.User;
 import com.kheyma.repository.UserRepository;
+import com.kheyma.security.AuthenticatedUser;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Component;
 
@@ -18,6 +19,10 @@ public class SecurityUtil {
         if (authentication == null) {
             return null;
         }
+        if (authentication.getPrincipal() instanceof AuthenticatedUser) {
+            // JWT requests carry the id in the token
+            return ((AuthenticatedUser) authentication.getPrincipal()).getUserId();
+        }
         String email = authentication.getName();
         User user = userRepository.findByEmail(email)
                 .orElseThrow(() -> new RuntimeException("User not found"));
@@ -0,0 +1,39 @@
+package com.kheyma;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+
+/**
+ * Connection for the benchmarks that need a real MongoDB. The server is
+ * taken from {@code -Dbenchmark.mongodb.uri} (default a local one); each
+ * benchmark works in its own database so runs never touch application data.
+ */
+public final class MongoBenchmarkSupport {
+    
+    private static final String DEFAULT_URI = "mongodb://localhost:27017";
+    
+    private MongoBenchmarkSupport() {
+    }
+    
+    public static MongoClient connect() {
+        return MongoClients.create(System.getProperty("benchmark.mongodb.uri", DEFAULT_URI));
+    }
+    
+    /**
+     * Template over {@code database} with the indexes the application declares
+     * on {@code entities}, as auto index creation would create them.
+     */
+    public static MongoTemplate template(MongoClient client, String database, Class<?>... entities) {
+        MongoTemplate template = new MongoTemplate(client, database);
+        MongoPersistentEntityIndexResolver resolver =
+                new MongoPersistentEntityIndexResolver(template.getConverter().getMappingContext());
+        for (Class<?> entity : entities) {
+            IndexOperations indexes = template.indexOps(entity);
+            resolver.resolveIndexFor(entity).forEach(indexes::ensureIndex);
+        }
+        return template;
+    }
+}
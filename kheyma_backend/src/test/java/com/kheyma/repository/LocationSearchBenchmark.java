@@ -0,0 +1,138 @@
+package com.kheyma.repository;
+
+import com.kheyma.MongoBenchmarkSupport;
+import com.kheyma.model.Location;
+import com.mongodb.client.MongoClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of one keyword search page (20 hits plus the total) through the
+ * weighted text index against the previous case-insensitive regex over
+ * title and description, at 10k, 100k and 1M locations.
+ *
+ * Needs a MongoDB (see {@link MongoBenchmarkSupport}). Each size is seeded
+ * once into {@code kheyma_benchmark_search_<size>} and reused by later runs.
+ * The keyword occurs in about 1% of the locations.
+ *
+ * Run with:
+ * <pre>
+ * mvn -B test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) \
+ *     -Dbenchmark.mongodb.uri=mongodb://localhost:27017 com.kheyma.repository.LocationSearchBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class LocationSearchBenchmark {
+    
+    private static final String KEYWORD = "lakeside";
+    private static final int PAGE_SIZE = 20;
+    private static final int SEED_BATCH = 10_000;
+    private static final String[] WORDS = {
+            "desert", "oasis", "dune", "canyon", "valley", "camp", "star", "palm", "rock", "wadi",
+            "sunset", "cedar", "spring", "ridge", "meadow", "river", "summit", "pine", "sand", "breeze"};
+    
+    @Param({"10000", "100000", "1000000"})
+    private int locations;
+    
+    private MongoClient client;
+    private MongoTemplate template;
+    private LocationSearchCriteria criteria;
+    
+    @Setup
+    public void setUp() {
+        client = MongoBenchmarkSupport.connect();
+        template = MongoBenchmarkSupport.template(client, "kheyma_benchmark_search_" + locations, Location.class);
+        if (template.estimatedCount(Location.class) != locations) {
+            template.dropCollection(Location.class);
+            template = MongoBenchmarkSupport.template(client, "kheyma_benchmark_search_" + locations, Location.class);
+            seed();
+        }
+        criteria = new LocationSearchCriteria();
+        criteria.setQuery(KEYWORD);
+    }
+    
+    @TearDown
+    public void tearDown() {
+        client.close();
+    }
+    
+    @Benchmark
+    public long textIndex() {
+        return page(LocationRepositoryImpl.buildQuery(criteria, true));
+    }
+    
+    @Benchmark
+    public long regex() {
+        return page(LocationRepositoryImpl.buildQuery(criteria, false));
+    }
+    
+    private long page(Query query) {
+        List<Location> hits = template.find(Query.of(query).with(PageRequest.of(0, PAGE_SIZE)), Location.class);
+        return hits.size() + template.count(query, Location.class);
+    }
+    
+    private void seed() {
+        Random random = new Random(42);
+        List<Location> batch = new ArrayList<>(SEED_BATCH);
+        for (int i = 0; i < locations; i++) {
+            Location location = new Location();
+            location.setTitle(words(random, 3) + (i % 100 == 0 ? " " + KEYWORD : ""));
+            location.setDescription(words(random, 30));
+            location.setTags(List.of(WORDS[random.nextInt(WORDS.length)], WORDS[random.nextInt(WORDS.length)]));
+            location.setGeoLocation(new Location.GeoLocation(35 + random.nextDouble(), 31 + random.nextDouble()));
+            location.setPricePerNight(BigDecimal.valueOf(50 + random.nextInt(950)));
+            location.setLocationType(Location.LocationType.values()[random.nextInt(Location.LocationType.values().length)]);
+            batch.add(location);
+            if (batch.size() == SEED_BATCH) {
+                template.insert(batch, Location.class);
+                batch = new ArrayList<>(SEED_BATCH);
+            }
+        }
+        if (!batch.isEmpty()) {
+            template.insert(batch, Location.class);
+        }
+    }
+    
+    private static String words(Random random, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+    
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(LocationSearchBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,94 @@
+package com.kheyma.security;
+
+import com.kheyma.model.User;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token handling cost of one authenticated request, before and after the
+ * single-pass verification in {@link JwtUtil}.
+ *
+ * {@code perRequestBefore} reproduces the old filter: three parses
+ * (subject, subject again in validateToken, expiration), each building a
+ * new key and parser. {@code perRequestAfter} is the current filter path.
+ *
+ * Run with:
+ * <pre>
+ * mvn -B test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) com.kheyma.security.JwtVerificationBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtVerificationBenchmark {
+    
+    private static final String SECRET = "kheymaSecretKeyForJWTTokenGenerationAndValidation2024";
+    
+    private JwtUtil jwtUtil;
+    private String token;
+    
+    @Setup
+    public void setUp() {
+        jwtUtil = new JwtUtil();
+        ReflectionTestUtils.setField(jwtUtil, "secret", SECRET);
+        ReflectionTestUtils.setField(jwtUtil, "expiration", 86_400_000L);
+        ReflectionTestUtils.setField(jwtUtil, "refreshExpiration", 604_800_000L);
+        jwtUtil.init();
+        
+        User user = new User();
+        user.setId("65f0c0ffee0000000000abcd");
+        user.setEmail("camper@kheyma.com");
+        user.getRoles().add(User.Role.ROLE_USER);
+        token = jwtUtil.generateToken(user);
+    }
+    
+    @Benchmark
+    public void perRequestBefore(Blackhole blackhole) {
+        String username = parseOnce(token).getSubject();
+        boolean valid = username.equals(parseOnce(token).getSubject())
+                && !parseOnce(token).getExpiration().before(new Date());
+        blackhole.consume(valid);
+    }
+    
+    @Benchmark
+    public void perRequestAfter(Blackhole blackhole) {
+        Claims claims = jwtUtil.parseVerifiedClaims(token);
+        blackhole.consume(jwtUtil.toPrincipal(claims));
+        blackhole.consume(jwtUtil.getTokenVersion(claims));
+    }
+    
+    // The old JwtUtil.extractAllClaims: a new key and parser on every call
+    private static Claims parseOnce(String token) {
+        SecretKey key = Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8));
+        return Jwts.parser().verifyWith(key).build().parseSignedClaims(token).getPayload();
+    }
+    
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(JwtVerificationBenchmark.class.getSimpleName()).build()).run();
+    }
+}
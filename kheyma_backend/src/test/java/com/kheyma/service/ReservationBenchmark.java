@@ -0,0 +1,149 @@
+package com.kheyma.service;
+
+import com.kheyma.MongoBenchmarkSupport;
+import com.kheyma.model.Location;
+import com.kheyma.model.LocationNight;
+import com.mongodb.client.MongoClient;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link InventoryService#reserve} (each claimed stay is
+ * released again, so inventory stays in a steady state) at 1, 8 and 64
+ * concurrent bookers.
+ *
+ * {@code spreadDates} books 1 to 3 night stays over the next 30 days of
+ * 100 locations with 4 tickets a day, so bookers regularly meet on the same
+ * night documents. {@code hotDate} has every booker claim a ticket for the
+ * same night of one location with {@value #HOT_CAPACITY} tickets, which is
+ * the worst case for the conditional {@code $inc}: all bookers race on one
+ * document. The {@code claimed} and {@code refused} counters show how many
+ * attempts found a night full.
+ *
+ * Needs a MongoDB (see {@link MongoBenchmarkSupport}). Run with:
+ * <pre>
+ * mvn -B test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) \
+ *     -Dbenchmark.mongodb.uri=mongodb://localhost:27017 com.kheyma.service.ReservationBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ReservationBenchmark {
+    
+    private static final String DATABASE = "kheyma_benchmark_reservations";
+    private static final int LOCATIONS = 100;
+    private static final int CAPACITY = 4;
+    private static final int DATE_WINDOW_DAYS = 30;
+    private static final int HOT_CAPACITY = 16;
+    
+    private MongoClient client;
+    private InventoryService inventoryService;
+    private List<String> locationIds;
+    private String hotLocationId;
+    private LocalDate firstNight;
+    
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Outcome {
+        public long claimed;
+        public long refused;
+        
+        private final Random random = new Random();
+        
+        @Setup(Level.Iteration)
+        public void reset() {
+            claimed = 0;
+            refused = 0;
+        }
+    }
+    
+    @Setup
+    public void setUp() {
+        client = MongoBenchmarkSupport.connect();
+        client.getDatabase(DATABASE).drop();
+        MongoTemplate template = MongoBenchmarkSupport.template(client, DATABASE, Location.class, LocationNight.class);
+        
+        List<Location> locations = new ArrayList<>();
+        for (int i = 0; i < LOCATIONS; i++) {
+            Location location = new Location();
+            location.setTitle("Camp " + i);
+            location.setTicketCapacity(CAPACITY);
+            locations.add(location);
+        }
+        locationIds = new ArrayList<>();
+        template.insert(locations, Location.class).forEach(location -> locationIds.add(location.getId()));
+        
+        Location hot = new Location();
+        hot.setTitle("Hot camp");
+        hot.setTicketCapacity(HOT_CAPACITY);
+        hotLocationId = template.insert(hot).getId();
+        
+        inventoryService = new InventoryService();
+        ReflectionTestUtils.setField(inventoryService, "mongoTemplate", template);
+        firstNight = LocalDate.now().plusDays(1);
+    }
+    
+    @TearDown
+    public void tearDown() {
+        client.close();
+    }
+    
+    @Benchmark
+    public void spreadDates(Outcome outcome) {
+        String locationId = locationIds.get(outcome.random.nextInt(LOCATIONS));
+        LocalDate start = firstNight.plusDays(outcome.random.nextInt(DATE_WINDOW_DAYS));
+        book(outcome, locationId, start, start.plusDays(1 + outcome.random.nextInt(3)));
+    }
+    
+    @Benchmark
+    public void hotDate(Outcome outcome) {
+        book(outcome, hotLocationId, firstNight, firstNight);
+    }
+    
+    private void book(Outcome outcome, String locationId, LocalDate start, LocalDate end) {
+        try {
+            inventoryService.reserve(locationId, start, end);
+        } catch (RuntimeException e) {
+            outcome.refused++;
+            return;
+        }
+        outcome.claimed++;
+        inventoryService.release(locationId, start, end);
+    }
+    
+    public static void main(String[] args) throws RunnerException {
+        for (int bookers : new int[]{1, 8, 64}) {
+            new Runner(new OptionsBuilder()
+                    .include(ReservationBenchmark.class.getSimpleName())
+                    .threads(bookers)
+                    .build()).run();
+        }
+    }
+}